@@ -0,0 +1,480 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * B+ tree index with high fan-out nodes.
+ * All records live in the leaves, which are chained left to right so that range scans and
+ * ordered cursors descend once to the first matching leaf and then walk sibling links.
+ */
+public class BPlusTree<K extends Comparable<K>, R> implements OrderedIndex<K, R>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Maximum number of keys held by a node before it splits.
+    static final int ORDER = 64;
+    private static final int MIN_KEYS = ORDER / 2;
+
+    private Node root;
+    private int size;
+
+    private abstract static class Node implements Serializable {
+        private static final long serialVersionUID = 1L;
+        Object[] keys = new Object[ORDER + 1];
+        int count;
+    }
+
+    private static class InternalNode extends Node {
+        private static final long serialVersionUID = 1L;
+        Node[] children = new Node[ORDER + 2];
+    }
+
+    private static class LeafNode extends Node {
+        private static final long serialVersionUID = 1L;
+        Object[] records = new Object[ORDER + 1];
+        // Rebuilt after deserialization so the leaf chain is never serialized recursively.
+        transient LeafNode next;
+    }
+
+    public BPlusTree() {
+        root = new LeafNode();
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public R search(K key) {
+        LeafNode leaf = findLeaf(key);
+        int pos = leafPosition(leaf, key);
+        if (pos < leaf.count && compare(leaf.keys[pos], key) == 0) {
+            return (R) leaf.records[pos];
+        }
+        return null;
+    }
+
+    @Override
+    public void insert(K key, R record) {
+        InternalNode[] path = new InternalNode[height()];
+        int[] childIndexes = new int[height()];
+        int depth = 0;
+        Node node = root;
+        while (node instanceof InternalNode) {
+            InternalNode internal = (InternalNode) node;
+            int idx = childIndex(internal, key);
+            path[depth] = internal;
+            childIndexes[depth++] = idx;
+            node = internal.children[idx];
+        }
+        LeafNode leaf = (LeafNode) node;
+        int pos = leafPosition(leaf, key);
+        if (pos < leaf.count && compare(leaf.keys[pos], key) == 0) {
+            System.out.println("Error: Duplicate key insertion attempted: " + key);
+            return;
+        }
+        shiftRight(leaf.keys, pos, leaf.count);
+        shiftRight(leaf.records, pos, leaf.count);
+        leaf.keys[pos] = key;
+        leaf.records[pos] = record;
+        leaf.count++;
+        size++;
+        if (leaf.count <= ORDER) {
+            return;
+        }
+
+        // Split the leaf and push separators up the recorded path as long as nodes overflow.
+        LeafNode right = new LeafNode();
+        int half = leaf.count / 2;
+        right.count = leaf.count - half;
+        System.arraycopy(leaf.keys, half, right.keys, 0, right.count);
+        System.arraycopy(leaf.records, half, right.records, 0, right.count);
+        clear(leaf.keys, half, leaf.count);
+        clear(leaf.records, half, leaf.count);
+        leaf.count = half;
+        right.next = leaf.next;
+        leaf.next = right;
+
+        Object separator = right.keys[0];
+        Node newChild = right;
+        for (int level = depth - 1; level >= 0; level--) {
+            InternalNode parent = path[level];
+            int idx = childIndexes[level];
+            shiftRight(parent.keys, idx, parent.count);
+            shiftRight(parent.children, idx + 1, parent.count + 1);
+            parent.keys[idx] = separator;
+            parent.children[idx + 1] = newChild;
+            parent.count++;
+            if (parent.count <= ORDER) {
+                return;
+            }
+            InternalNode sibling = new InternalNode();
+            int mid = parent.count / 2;
+            separator = parent.keys[mid];
+            sibling.count = parent.count - mid - 1;
+            System.arraycopy(parent.keys, mid + 1, sibling.keys, 0, sibling.count);
+            System.arraycopy(parent.children, mid + 1, sibling.children, 0, sibling.count + 1);
+            clear(parent.keys, mid, parent.count);
+            clear(parent.children, mid + 1, parent.count + 1);
+            parent.count = mid;
+            newChild = sibling;
+        }
+        InternalNode newRoot = new InternalNode();
+        newRoot.keys[0] = separator;
+        newRoot.children[0] = root;
+        newRoot.children[1] = newChild;
+        newRoot.count = 1;
+        root = newRoot;
+    }
+
+    /**
+     * Packs the entries into leaves left to right, then builds each level of internal nodes over
+     * the one below until a single root remains. Entries are spread evenly over the nodes of a
+     * level, so every node but the root holds at least MIN_KEYS keys, as after inserts.
+     */
+    @Override
+    public void load(List<K> keys, List<R> records) {
+        int n = keys.size();
+        int leafCount = Math.max(1, (n + ORDER - 1) / ORDER);
+        List<Node> level = new ArrayList<>(leafCount);
+        List<Object> lowest = new ArrayList<>(leafCount); // Smallest key under each node.
+        LeafNode previous = null;
+        for (int i = 0, from = 0; i < leafCount; i++) {
+            int to = (int) ((long) n * (i + 1) / leafCount);
+            LeafNode leaf = new LeafNode();
+            for (int j = from; j < to; j++) {
+                leaf.keys[j - from] = keys.get(j);
+                leaf.records[j - from] = records.get(j);
+            }
+            leaf.count = to - from;
+            if (previous != null) {
+                previous.next = leaf;
+            }
+            previous = leaf;
+            level.add(leaf);
+            lowest.add(leaf.keys[0]);
+            from = to;
+        }
+        while (level.size() > 1) {
+            int parents = (level.size() + ORDER) / (ORDER + 1);
+            List<Node> above = new ArrayList<>(parents);
+            List<Object> aboveLowest = new ArrayList<>(parents);
+            for (int p = 0, from = 0; p < parents; p++) {
+                int to = level.size() * (p + 1) / parents;
+                InternalNode node = new InternalNode();
+                for (int j = from; j < to; j++) {
+                    node.children[j - from] = level.get(j);
+                    if (j > from) {
+                        node.keys[j - from - 1] = lowest.get(j);
+                    }
+                }
+                node.count = to - from - 1;
+                above.add(node);
+                aboveLowest.add(lowest.get(from));
+                from = to;
+            }
+            level = above;
+            lowest = aboveLowest;
+        }
+        root = level.get(0);
+        size = n;
+    }
+
+    @Override
+    public void delete(K key) {
+        InternalNode[] path = new InternalNode[height()];
+        int[] childIndexes = new int[height()];
+        int depth = 0;
+        Node node = root;
+        while (node instanceof InternalNode) {
+            InternalNode internal = (InternalNode) node;
+            int idx = childIndex(internal, key);
+            path[depth] = internal;
+            childIndexes[depth++] = idx;
+            node = internal.children[idx];
+        }
+        LeafNode leaf = (LeafNode) node;
+        int pos = leafPosition(leaf, key);
+        if (pos >= leaf.count || compare(leaf.keys[pos], key) != 0) {
+            return;
+        }
+        shiftLeft(leaf.keys, pos, leaf.count);
+        shiftLeft(leaf.records, pos, leaf.count);
+        leaf.count--;
+        size--;
+
+        // Repair underflow bottom up by borrowing from or merging with a sibling.
+        Node current = leaf;
+        for (int level = depth - 1; level >= 0 && current.count < MIN_KEYS; level--) {
+            InternalNode parent = path[level];
+            int idx = childIndexes[level];
+            Node left = idx > 0 ? parent.children[idx - 1] : null;
+            Node right = idx < parent.count ? parent.children[idx + 1] : null;
+            if (left != null && left.count > MIN_KEYS) {
+                borrowFromLeft(parent, idx, left, current);
+                return;
+            }
+            if (right != null && right.count > MIN_KEYS) {
+                borrowFromRight(parent, idx, current, right);
+                return;
+            }
+            if (left != null) {
+                merge(parent, idx - 1, left, current);
+            } else {
+                merge(parent, idx, current, right);
+            }
+            current = parent;
+        }
+        if (root instanceof InternalNode && root.count == 0) {
+            root = ((InternalNode) root).children[0];
+        }
+    }
+
+    @Override
+    public List<R> inOrderTraversal() {
+        List<R> records = new ArrayList<>(size);
+        Iterator<R> cursor = cursor();
+        while (cursor.hasNext()) {
+            records.add(cursor.next());
+        }
+        return records;
+    }
+
+    @Override
+    public Iterator<R> range(K low, boolean lowInclusive, K high, boolean highInclusive) {
+        LeafNode leaf;
+        int pos;
+        if (low == null) {
+            leaf = firstLeaf();
+            pos = 0;
+        } else {
+            leaf = findLeaf(low);
+            pos = leafPosition(leaf, low);
+            if (!lowInclusive && pos < leaf.count && compare(leaf.keys[pos], low) == 0) {
+                pos++;
+            }
+        }
+        return new LeafCursor(leaf, pos, high, highInclusive);
+    }
+
+    /**
+     * Walks the leaf chain from a starting slot until the upper bound is passed.
+     */
+    private class LeafCursor implements Iterator<R> {
+        private LeafNode leaf;
+        private int pos;
+        private final K high;
+        private final boolean highInclusive;
+
+        LeafCursor(LeafNode leaf, int pos, K high, boolean highInclusive) {
+            this.leaf = leaf;
+            this.pos = pos;
+            this.high = high;
+            this.highInclusive = highInclusive;
+            skipExhaustedLeaves();
+        }
+
+        private void skipExhaustedLeaves() {
+            while (leaf != null && pos >= leaf.count) {
+                leaf = leaf.next;
+                pos = 0;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (leaf == null) {
+                return false;
+            }
+            if (high == null) {
+                return true;
+            }
+            int cmp = compare(leaf.keys[pos], high);
+            return cmp < 0 || (cmp == 0 && highInclusive);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public R next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            R record = (R) leaf.records[pos++];
+            skipExhaustedLeaves();
+            return record;
+        }
+    }
+
+    // ----------------- Node Helpers -----------------
+
+    private LeafNode findLeaf(K key) {
+        Node node = root;
+        while (node instanceof InternalNode) {
+            InternalNode internal = (InternalNode) node;
+            node = internal.children[childIndex(internal, key)];
+        }
+        return (LeafNode) node;
+    }
+
+    private LeafNode firstLeaf() {
+        Node node = root;
+        while (node instanceof InternalNode) {
+            node = ((InternalNode) node).children[0];
+        }
+        return (LeafNode) node;
+    }
+
+    /**
+     * Index of the child subtree that may contain the key: separators equal to the key route right.
+     */
+    private int childIndex(InternalNode node, K key) {
+        int lo = 0, hi = node.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(node.keys[mid], key) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Index of the first slot in the leaf whose key is not less than the given key.
+     */
+    private int leafPosition(LeafNode leaf, K key) {
+        int lo = 0, hi = leaf.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(leaf.keys[mid], key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void borrowFromLeft(InternalNode parent, int idx, Node left, Node node) {
+        if (node instanceof LeafNode) {
+            LeafNode leftLeaf = (LeafNode) left, leaf = (LeafNode) node;
+            shiftRight(leaf.keys, 0, leaf.count);
+            shiftRight(leaf.records, 0, leaf.count);
+            leaf.keys[0] = leftLeaf.keys[leftLeaf.count - 1];
+            leaf.records[0] = leftLeaf.records[leftLeaf.count - 1];
+            leftLeaf.keys[leftLeaf.count - 1] = null;
+            leftLeaf.records[leftLeaf.count - 1] = null;
+            parent.keys[idx - 1] = leaf.keys[0];
+        } else {
+            InternalNode leftNode = (InternalNode) left, internal = (InternalNode) node;
+            shiftRight(internal.keys, 0, internal.count);
+            shiftRight(internal.children, 0, internal.count + 1);
+            internal.keys[0] = parent.keys[idx - 1];
+            internal.children[0] = leftNode.children[leftNode.count];
+            parent.keys[idx - 1] = leftNode.keys[leftNode.count - 1];
+            leftNode.keys[leftNode.count - 1] = null;
+            leftNode.children[leftNode.count] = null;
+        }
+        left.count--;
+        node.count++;
+    }
+
+    private void borrowFromRight(InternalNode parent, int idx, Node node, Node right) {
+        if (node instanceof LeafNode) {
+            LeafNode leaf = (LeafNode) node, rightLeaf = (LeafNode) right;
+            leaf.keys[leaf.count] = rightLeaf.keys[0];
+            leaf.records[leaf.count] = rightLeaf.records[0];
+            shiftLeft(rightLeaf.keys, 0, rightLeaf.count);
+            shiftLeft(rightLeaf.records, 0, rightLeaf.count);
+            parent.keys[idx] = rightLeaf.keys[0];
+        } else {
+            InternalNode internal = (InternalNode) node, rightNode = (InternalNode) right;
+            internal.keys[internal.count] = parent.keys[idx];
+            internal.children[internal.count + 1] = rightNode.children[0];
+            parent.keys[idx] = rightNode.keys[0];
+            shiftLeft(rightNode.keys, 0, rightNode.count);
+            shiftLeft(rightNode.children, 0, rightNode.count + 1);
+        }
+        right.count--;
+        node.count++;
+    }
+
+    /**
+     * Merges the child at separatorIndex + 1 into its left sibling and drops the separator.
+     */
+    private void merge(InternalNode parent, int separatorIndex, Node left, Node right) {
+        if (left instanceof LeafNode) {
+            LeafNode leftLeaf = (LeafNode) left, rightLeaf = (LeafNode) right;
+            System.arraycopy(rightLeaf.keys, 0, leftLeaf.keys, leftLeaf.count, rightLeaf.count);
+            System.arraycopy(rightLeaf.records, 0, leftLeaf.records, leftLeaf.count, rightLeaf.count);
+            leftLeaf.count += rightLeaf.count;
+            leftLeaf.next = rightLeaf.next;
+        } else {
+            InternalNode leftNode = (InternalNode) left, rightNode = (InternalNode) right;
+            leftNode.keys[leftNode.count] = parent.keys[separatorIndex];
+            System.arraycopy(rightNode.keys, 0, leftNode.keys, leftNode.count + 1, rightNode.count);
+            System.arraycopy(rightNode.children, 0, leftNode.children, leftNode.count + 1, rightNode.count + 1);
+            leftNode.count += rightNode.count + 1;
+        }
+        shiftLeft(parent.keys, separatorIndex, parent.count);
+        shiftLeft(parent.children, separatorIndex + 1, parent.count + 1);
+        parent.count--;
+    }
+
+    private int height() {
+        int h = 0;
+        for (Node node = root; node instanceof InternalNode; node = ((InternalNode) node).children[0]) {
+            h++;
+        }
+        return h;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object a, K b) {
+        return ((K) a).compareTo(b);
+    }
+
+    private static void shiftRight(Object[] arr, int from, int count) {
+        System.arraycopy(arr, from, arr, from + 1, count - from);
+    }
+
+    private static void shiftLeft(Object[] arr, int from, int count) {
+        System.arraycopy(arr, from + 1, arr, from, count - from - 1);
+        arr[count - 1] = null;
+    }
+
+    private static void clear(Object[] arr, int from, int to) {
+        for (int i = from; i < to; i++) {
+            arr[i] = null;
+        }
+    }
+
+    /**
+     * Restores the transient leaf chain by visiting the leaves left to right.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        List<Node> level = new ArrayList<>();
+        level.add(root);
+        while (!level.isEmpty() && level.get(0) instanceof InternalNode) {
+            List<Node> below = new ArrayList<>();
+            for (Node node : level) {
+                InternalNode internal = (InternalNode) node;
+                for (int i = 0; i <= internal.count; i++) {
+                    below.add(internal.children[i]);
+                }
+            }
+            level = below;
+        }
+        for (int i = 0; i + 1 < level.size(); i++) {
+            ((LeafNode) level.get(i)).next = (LeafNode) level.get(i + 1);
+        }
+    }
+}
@@ -1,114 +1,332 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
-public class BinarySearchTree<T extends Comparable<T>, R> implements Serializable {
+/**
+ * Ordered index used for primary keys.
+ * The tree is kept height-balanced (AVL) so that inserts, lookups and deletes stay O(log n)
+ * regardless of the order keys arrive in, and all hot paths are iterative so large tables
+ * cannot overflow the call stack.
+ */
+public class BinarySearchTree<T extends Comparable<T>, R> implements OrderedIndex<T, R>, Serializable {
     private static final long serialVersionUID = 1L;
-    
+
     private BSTNode<T, R> root;
-    
+    private int size;
+
     private static class BSTNode<T, R> implements Serializable {
         private static final long serialVersionUID = 1L;
         T key;
         R record;
         BSTNode<T, R> left;
         BSTNode<T, R> right;
-        
+        int height;
+
         BSTNode(T key, R record) {
             this.key = key;
             this.record = record;
             this.left = null;
             this.right = null;
+            this.height = 1;
         }
     }
-    
+
     public BinarySearchTree() {
         root = null;
+        size = 0;
     }
-    
-    public void insert(T key, R record) {
-        root = insertRecursive(root, key, record);
+
+    /**
+     * Trees saved before the tree was balanced have no heights or size and may be arbitrarily
+     * deep, so they are rebuilt from their entries in key order.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (root == null || root.height > 0) {
+            return;
+        }
+        List<T> keys = new ArrayList<>();
+        List<R> records = new ArrayList<>();
+        Deque<BSTNode<T, R>> stack = new ArrayDeque<>();
+        BSTNode<T, R> node = root;
+        while (node != null || !stack.isEmpty()) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+            node = stack.pop();
+            keys.add(node.key);
+            records.add(node.record);
+            node = node.right;
+        }
+        load(keys, records);
     }
-    
-    private BSTNode<T, R> insertRecursive(BSTNode<T, R> node, T key, R record) {
-        if (node == null) {
-            return new BSTNode<>(key, record);
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void insert(T key, R record) {
+        BSTNode<T, R>[] path = newPath();
+        int depth = 0;
+        BSTNode<T, R> node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                System.out.println("Error: Duplicate key insertion attempted: " + key);
+                return;
+            }
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right;
         }
-        int cmp = key.compareTo(node.key);
-        if (cmp < 0) {
-            node.left = insertRecursive(node.left, key, record);
-        } else if (cmp > 0) {
-            node.right = insertRecursive(node.right, key, record);
+        BSTNode<T, R> inserted = new BSTNode<>(key, record);
+        if (depth == 0) {
+            root = inserted;
         } else {
-            System.out.println("Error: Duplicate key insertion attempted: " + key);
+            BSTNode<T, R> parent = path[depth - 1];
+            if (key.compareTo(parent.key) < 0) {
+                parent.left = inserted;
+            } else {
+                parent.right = inserted;
+            }
         }
-        return node;
+        size++;
+        rebalancePath(path, depth);
     }
-    
-    public R search(T key) {
-        return searchRecursive(root, key);
+
+    /**
+     * Builds a perfectly balanced tree: the middle entry of each slice becomes the root of its
+     * subtree. The recursion is only as deep as the tree is high.
+     */
+    @Override
+    public void load(List<T> keys, List<R> records) {
+        root = build(keys, records, 0, keys.size());
+        size = keys.size();
     }
-    
-    private R searchRecursive(BSTNode<T, R> node, T key) {
-        if (node == null) {
+
+    private BSTNode<T, R> build(List<T> keys, List<R> records, int from, int to) {
+        if (from >= to) {
             return null;
         }
-        int cmp = key.compareTo(node.key);
-        if (cmp == 0) {
-            return node.record;
-        } else if (cmp < 0) {
-            return searchRecursive(node.left, key);
-        } else {
-            return searchRecursive(node.right, key);
+        int mid = (from + to) >>> 1;
+        BSTNode<T, R> node = new BSTNode<>(keys.get(mid), records.get(mid));
+        node.left = build(keys, records, from, mid);
+        node.right = build(keys, records, mid + 1, to);
+        updateHeight(node);
+        return node;
+    }
+
+    @Override
+    public R search(T key) {
+        BSTNode<T, R> node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                return node.record;
+            }
+            node = cmp < 0 ? node.left : node.right;
         }
+        return null;
     }
-    
+
+    @Override
     public List<R> inOrderTraversal() {
-        List<R> records = new ArrayList<>();
-        inOrderRecursive(root, records);
-        return records;
-    }
-    
-    private void inOrderRecursive(BSTNode<T, R> node, List<R> records) {
-        if (node != null) {
-            inOrderRecursive(node.left, records);
+        List<R> records = new ArrayList<>(size);
+        BSTNode<T, R>[] stack = newPath();
+        int top = 0;
+        BSTNode<T, R> node = root;
+        while (node != null || top > 0) {
+            while (node != null) {
+                stack[top++] = node;
+                node = node.left;
+            }
+            node = stack[--top];
             records.add(node.record);
-            inOrderRecursive(node.right, records);
+            node = node.right;
         }
+        return records;
     }
-    
+
+    @Override
     public void delete(T key) {
-        root = deleteRecursive(root, key);
-    }
-    
-    private BSTNode<T, R> deleteRecursive(BSTNode<T, R> node, T key) {
+        BSTNode<T, R>[] path = newPath();
+        int depth = 0;
+        BSTNode<T, R> node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                break;
+            }
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
         if (node == null) {
-            return null;
+            return;
+        }
+        if (node.left != null && node.right != null) {
+            // Replace with the in-order successor, then unlink the successor instead.
+            path[depth++] = node;
+            BSTNode<T, R> successor = node.right;
+            while (successor.left != null) {
+                path[depth++] = successor;
+                successor = successor.left;
+            }
+            node.key = successor.key;
+            node.record = successor.record;
+            node = successor;
         }
-        int cmp = key.compareTo(node.key);
-        if (cmp < 0) {
-            node.left = deleteRecursive(node.left, key);
-        } else if (cmp > 0) {
-            node.right = deleteRecursive(node.right, key);
+        BSTNode<T, R> child = node.left != null ? node.left : node.right;
+        if (depth == 0) {
+            root = child;
         } else {
-            if (node.left == null) {
-                return node.right;
-            } else if (node.right == null) {
-                return node.left;
+            BSTNode<T, R> parent = path[depth - 1];
+            if (parent.left == node) {
+                parent.left = child;
+            } else {
+                parent.right = child;
             }
-            BSTNode<T, R> minNode = minValueNode(node.right);
-            node.key = minNode.key;
-            node.record = minNode.record;
-            node.right = deleteRecursive(node.right, minNode.key);
         }
-        return node;
+        size--;
+        rebalancePath(path, depth);
+    }
+
+    @Override
+    public Iterator<R> range(T low, boolean lowInclusive, T high, boolean highInclusive) {
+        return new RangeCursor(low, lowInclusive, high, highInclusive);
+    }
+
+    /**
+     * In-order cursor that starts at the lower bound and stops at the upper bound, so a
+     * range scan only visits the nodes on the boundary paths plus the matching keys.
+     */
+    private class RangeCursor implements Iterator<R> {
+        private final BSTNode<T, R>[] stack;
+        private int top;
+        private final T high;
+        private final boolean highInclusive;
+
+        RangeCursor(T low, boolean lowInclusive, T high, boolean highInclusive) {
+            this.stack = newPath();
+            this.high = high;
+            this.highInclusive = highInclusive;
+            BSTNode<T, R> node = root;
+            while (node != null) {
+                int cmp = low == null ? 1 : node.key.compareTo(low);
+                if (cmp > 0 || (cmp == 0 && lowInclusive)) {
+                    stack[top++] = node;
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (top == 0) {
+                return false;
+            }
+            if (high == null) {
+                return true;
+            }
+            int cmp = stack[top - 1].key.compareTo(high);
+            return cmp < 0 || (cmp == 0 && highInclusive);
+        }
+
+        @Override
+        public R next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            BSTNode<T, R> node = stack[--top];
+            BSTNode<T, R> child = node.right;
+            while (child != null) {
+                stack[top++] = child;
+                child = child.left;
+            }
+            return node.record;
+        }
     }
-    
-    private BSTNode<T, R> minValueNode(BSTNode<T, R> node) {
-        BSTNode<T, R> current = node;
-        while (current.left != null) {
-            current = current.left;
+
+    // ----------------- Balancing Helpers -----------------
+
+    /**
+     * Walks the recorded root-to-leaf path bottom up, fixing heights and rotating any node
+     * whose subtrees differ in height by more than one.
+     */
+    private void rebalancePath(BSTNode<T, R>[] path, int depth) {
+        for (int i = depth - 1; i >= 0; i--) {
+            BSTNode<T, R> node = path[i];
+            BSTNode<T, R> balanced = rebalance(node);
+            if (balanced != node) {
+                if (i == 0) {
+                    root = balanced;
+                } else if (path[i - 1].left == node) {
+                    path[i - 1].left = balanced;
+                } else {
+                    path[i - 1].right = balanced;
+                }
+            }
+        }
+    }
+
+    private BSTNode<T, R> rebalance(BSTNode<T, R> node) {
+        updateHeight(node);
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
         }
-        return current;
+        if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private BSTNode<T, R> rotateRight(BSTNode<T, R> node) {
+        BSTNode<T, R> pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        updateHeight(node);
+        updateHeight(pivot);
+        return pivot;
+    }
+
+    private BSTNode<T, R> rotateLeft(BSTNode<T, R> node) {
+        BSTNode<T, R> pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        updateHeight(node);
+        updateHeight(pivot);
+        return pivot;
+    }
+
+    private void updateHeight(BSTNode<T, R> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+    }
+
+    private int height(BSTNode<T, R> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * Returns an explicit stack long enough for any root-to-leaf path.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private BSTNode<T, R>[] newPath() {
+        return new BSTNode[height(root) + 2];
     }
 }
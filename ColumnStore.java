@@ -0,0 +1,320 @@
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Column-oriented storage for the rows of a table.
+ * INTEGER columns are kept in int arrays, FLOAT columns in double arrays and TEXT columns as
+ * UTF-8 bytes packed into one byte array per column, with a null bitmap per column. A row is
+ * addressed by its row id, its position in insertion order, so a cell costs 4 or 8 bytes (plus
+ * the text itself) instead of a boxed object in a per-row list.
+ *
+ * Rows are handed out as Row views, which are Records reading and writing the columns in place.
+ * The view returned by row() is kept and reused, so it can be held by an index; when deletions
+ * move rows down such views are renumbered and stay valid. Views obtained from rows() for other
+ * rows are temporary and must not be used after a deletion.
+ */
+public class ColumnStore implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int INITIAL_CAPACITY = 64; // A multiple of 64, the rows per bitmap word.
+
+    private final Table.Attribute.DataType[] types;
+    private final int[][] ints;       // Per INTEGER column, else null.
+    private final double[][] doubles; // Per FLOAT column, else null.
+    private final long[][] texts;     // Per TEXT column: offset << 32 | length into textData.
+    private final byte[][] textData;  // Per TEXT column: the packed UTF-8 bytes.
+    private final int[] textUsed;     // Per TEXT column: bytes of textData in use.
+    private final long[][] nulls;     // Per column: bitmap of NULL values.
+    private int rowCount;
+    private int capacity = INITIAL_CAPACITY;
+    private transient Row[] views;
+
+    public ColumnStore(List<Table.Attribute> attributes) {
+        int columns = attributes.size();
+        types = new Table.Attribute.DataType[columns];
+        ints = new int[columns][];
+        doubles = new double[columns][];
+        texts = new long[columns][];
+        textData = new byte[columns][];
+        textUsed = new int[columns];
+        nulls = new long[columns][];
+        for (int column = 0; column < columns; column++) {
+            types[column] = attributes.get(column).getDataType();
+            switch (types[column]) {
+                case INTEGER:
+                    ints[column] = new int[INITIAL_CAPACITY];
+                    break;
+                case FLOAT:
+                    doubles[column] = new double[INITIAL_CAPACITY];
+                    break;
+                default:
+                    texts[column] = new long[INITIAL_CAPACITY];
+                    textData[column] = new byte[INITIAL_CAPACITY * 8];
+                    break;
+            }
+            nulls[column] = new long[INITIAL_CAPACITY / 64];
+        }
+    }
+
+    /**
+     * Returns the number of rows; row ids run from 0 to size() - 1.
+     */
+    public int size() {
+        return rowCount;
+    }
+
+    public Object getValue(int row, int column) {
+        if ((nulls[column][row >> 6] & (1L << row)) != 0) {
+            return null;
+        }
+        switch (types[column]) {
+            case INTEGER:
+                return ints[column][row];
+            case FLOAT:
+                return doubles[column][row];
+            default:
+                long slot = texts[column][row];
+                return new String(textData[column], (int) (slot >>> 32), (int) slot, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Stores a value, which must already have the column's type (or be null).
+     */
+    public void setValue(int row, int column, Object value) {
+        if (value == null) {
+            nulls[column][row >> 6] |= 1L << row;
+            if (texts[column] != null) {
+                texts[column][row] = 0;
+            }
+            return;
+        }
+        nulls[column][row >> 6] &= ~(1L << row);
+        switch (types[column]) {
+            case INTEGER:
+                ints[column][row] = ((Number) value).intValue();
+                break;
+            case FLOAT:
+                doubles[column][row] = ((Number) value).doubleValue();
+                break;
+            default:
+                // Replaced text stays in textData until the next deletion compacts it.
+                texts[column][row] = appendText(column, value.toString().getBytes(StandardCharsets.UTF_8));
+                break;
+        }
+    }
+
+    private long appendText(int column, byte[] bytes) {
+        int offset = textUsed[column];
+        if (offset + bytes.length > textData[column].length) {
+            textData[column] = Arrays.copyOf(textData[column],
+                    Math.max(textData[column].length * 2, offset + bytes.length));
+        }
+        System.arraycopy(bytes, 0, textData[column], offset, bytes.length);
+        textUsed[column] = offset + bytes.length;
+        return ((long) offset << 32) | bytes.length;
+    }
+
+    /**
+     * Appends a row holding the given (already typed) values and returns its row id.
+     */
+    public int add(List<Object> values) {
+        if (rowCount == capacity) {
+            grow();
+        }
+        int row = rowCount++;
+        for (int column = 0; column < types.length; column++) {
+            setValue(row, column, values.get(column));
+        }
+        return row;
+    }
+
+    private void grow() {
+        capacity *= 2;
+        for (int column = 0; column < types.length; column++) {
+            if (ints[column] != null) {
+                ints[column] = Arrays.copyOf(ints[column], capacity);
+            } else if (doubles[column] != null) {
+                doubles[column] = Arrays.copyOf(doubles[column], capacity);
+            } else {
+                texts[column] = Arrays.copyOf(texts[column], capacity);
+            }
+            nulls[column] = Arrays.copyOf(nulls[column], capacity / 64);
+        }
+    }
+
+    /**
+     * Returns the lasting view of a row, creating it on first use.
+     */
+    public Row row(int row) {
+        if (views == null) {
+            views = new Row[Math.max(INITIAL_CAPACITY, row + 1)];
+        } else if (row >= views.length) {
+            views = Arrays.copyOf(views, Math.max(row + 1, views.length * 2));
+        }
+        Row view = views[row];
+        if (view == null) {
+            view = new Row(this, row);
+            views[row] = view;
+        }
+        return view;
+    }
+
+    /**
+     * Returns every row, in row id order, as a read-only list of views. Rows with a lasting view
+     * return it; the others get a temporary one.
+     */
+    public List<Table.Record> rows() {
+        return new AbstractList<Table.Record>() {
+            @Override
+            public Table.Record get(int row) {
+                if (views != null && row < views.length && views[row] != null) {
+                    return views[row];
+                }
+                return new Row(ColumnStore.this, row);
+            }
+
+            @Override
+            public int size() {
+                return rowCount;
+            }
+        };
+    }
+
+    /**
+     * Deletes the given rows in one pass: the remaining rows move down in order, their views
+     * are renumbered, and the text of deleted or overwritten values is reclaimed.
+     */
+    public void removeAll(BitSet deleted) {
+        int kept = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (deleted.get(row)) {
+                if (views != null && row < views.length && views[row] != null) {
+                    views[row].row = -1;
+                    views[row] = null;
+                }
+                continue;
+            }
+            if (kept != row) {
+                move(row, kept);
+            }
+            kept++;
+        }
+        for (int row = kept; row < rowCount; row++) {
+            for (int column = 0; column < types.length; column++) {
+                nulls[column][row >> 6] &= ~(1L << row);
+            }
+        }
+        rowCount = kept;
+        packTexts();
+    }
+
+    private void move(int from, int to) {
+        for (int column = 0; column < types.length; column++) {
+            if (ints[column] != null) {
+                ints[column][to] = ints[column][from];
+            } else if (doubles[column] != null) {
+                doubles[column][to] = doubles[column][from];
+            } else {
+                texts[column][to] = texts[column][from];
+            }
+            if ((nulls[column][from >> 6] & (1L << from)) != 0) {
+                nulls[column][to >> 6] |= 1L << to;
+            } else {
+                nulls[column][to >> 6] &= ~(1L << to);
+            }
+        }
+        if (views != null && from < views.length) {
+            views[to] = views[from];
+            views[from] = null;
+            if (views[to] != null) {
+                views[to].row = to;
+            }
+        }
+    }
+
+    /**
+     * Rewrites each TEXT column's bytes so only those of current values remain.
+     */
+    private void packTexts() {
+        for (int column = 0; column < types.length; column++) {
+            if (texts[column] == null) {
+                continue;
+            }
+            byte[] old = textData[column];
+            textData[column] = new byte[Math.max(INITIAL_CAPACITY * 8, textUsed[column])];
+            textUsed[column] = 0;
+            for (int row = 0; row < rowCount; row++) {
+                long slot = texts[column][row];
+                texts[column][row] = appendText(column,
+                        Arrays.copyOfRange(old, (int) (slot >>> 32), (int) (slot >>> 32) + (int) slot));
+            }
+        }
+    }
+
+    /**
+     * Deletes every row.
+     */
+    public void clear() {
+        BitSet all = new BitSet(rowCount);
+        all.set(0, rowCount);
+        removeAll(all);
+    }
+
+    /**
+     * A row of a ColumnStore seen as a Record. Reads and writes go straight to the columns.
+     */
+    public static class Row extends Table.Record {
+        private static final long serialVersionUID = 1L;
+        private final ColumnStore store;
+        private int row; // -1 once the row is deleted.
+
+        Row(ColumnStore store, int row) {
+            super(null);
+            this.store = store;
+            this.row = row;
+        }
+
+        /**
+         * Returns the row id this view reads, or -1 once the row is deleted.
+         */
+        public int getRow() {
+            return row;
+        }
+
+        @Override
+        public List<Object> getValues() {
+            return new AbstractList<Object>() {
+                @Override
+                public Object get(int column) {
+                    return getValue(column);
+                }
+
+                @Override
+                public Object set(int column, Object value) {
+                    Object previous = getValue(column);
+                    setValue(column, value);
+                    return previous;
+                }
+
+                @Override
+                public int size() {
+                    return store.types.length;
+                }
+            };
+        }
+
+        @Override
+        public Object getValue(int index) {
+            return store.getValue(row, index);
+        }
+
+        @Override
+        public void setValue(int index, Object value) {
+            store.setValue(row, index, value);
+        }
+    }
+}
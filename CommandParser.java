@@ -24,6 +24,10 @@ public class CommandParser {
             return new CreateDatabaseCommand(dbName);
         } else if (inputUpper.startsWith("CREATE TABLE")) {
             return new CreateTableCommand(input);
+        } else if (inputUpper.startsWith("CREATE INDEX")) {
+            return new CreateIndexCommand(input);
+        } else if (inputUpper.startsWith("DROP INDEX")) {
+            return new DropIndexCommand(input);
         } else if (inputUpper.startsWith("USE")) {
             String[] tokens = input.split("\\s+");
             if (tokens.length < 2) {
@@ -33,6 +37,10 @@ public class CommandParser {
             return new UseDatabaseCommand(dbName);
         } else if (inputUpper.startsWith("DESCRIBE")) {
             return new DescribeCommand(input);
+        } else if (inputUpper.startsWith("EXPLAIN")) {
+            return new ExplainCommand(input);
+        } else if (inputUpper.startsWith("ANALYZE")) {
+            return new AnalyzeCommand(input);
         } else if (inputUpper.startsWith("SELECT")) {
             return new SelectCommand(input);
         } else if (inputUpper.startsWith("LET")) {
@@ -65,6 +73,11 @@ public class CommandParser {
             this.dbName = dbName;
         }
 
+        @Override
+        public boolean modifiesState() {
+            return true;
+        }
+
         @Override
         public void execute(DBMS dbms) {
             dbms.createDatabase(dbName);
@@ -74,11 +87,17 @@ public class CommandParser {
     public static class CreateTableCommand implements DBMS.Command {
         private String tableName;
         private java.util.List<Table.Attribute> attributes = new java.util.ArrayList<>();
+        private Table.IndexType indexType = Table.IndexType.BST;
+        private Table.StorageType storageType = Table.StorageType.ROW;
+        private int[] keyColumns;
 
         /**
          * Expected format:
          * CREATE TABLE tableName ( attrName dataType [PRIMARY KEY], attrName dataType,
-         * ... )
+         * ... [, PRIMARY KEY ( attrName, attrName, ... )] ) [USING BST | BTREE] [STORAGE ROW | COLUMN]
+         * A key of several attributes is ordered by the first, then the second, and so on; it is
+         * declared either with the closing PRIMARY KEY clause, in the order listed there, or by
+         * marking each attribute, in schema order.
          */
         public CreateTableCommand(String input) throws Exception {
             String remainder = input.substring("CREATE TABLE".length()).trim();
@@ -92,9 +111,55 @@ public class CommandParser {
                 throw new IllegalArgumentException("Missing ')' for attribute list.");
             }
             String attrListStr = remainder.substring(parenStart + 1, parenEnd).trim();
-            String[] attrTokens = attrListStr.split(",");
+            String options = remainder.substring(parenEnd + 1).trim();
+            if (!options.isEmpty()) {
+                String[] optionTokens = options.split("\\s+");
+                if (optionTokens.length % 2 != 0) {
+                    throw new IllegalArgumentException("Unexpected text after attribute list: " + options);
+                }
+                for (int i = 0; i < optionTokens.length; i += 2) {
+                    String value = optionTokens[i + 1].toUpperCase();
+                    if (optionTokens[i].equalsIgnoreCase("USING")) {
+                        try {
+                            indexType = Table.IndexType.valueOf(value);
+                        } catch (IllegalArgumentException e) {
+                            throw new IllegalArgumentException("Unknown index type: " + optionTokens[i + 1]);
+                        }
+                        if (indexType == Table.IndexType.HASH || indexType == Table.IndexType.BITMAP) {
+                            throw new IllegalArgumentException("The primary key needs an ordered index (BST or BTREE).");
+                        }
+                    } else if (optionTokens[i].equalsIgnoreCase("STORAGE")) {
+                        try {
+                            storageType = Table.StorageType.valueOf(value);
+                        } catch (IllegalArgumentException e) {
+                            throw new IllegalArgumentException("Unknown storage type: " + optionTokens[i + 1]);
+                        }
+                    } else {
+                        throw new IllegalArgumentException("Unexpected text after attribute list: " + options);
+                    }
+                }
+            }
+            List<String> attrTokens = new ArrayList<>();
+            int depth = 0, start = 0;
+            for (int i = 0; i < attrListStr.length(); i++) {
+                char c = attrListStr.charAt(i);
+                depth += c == '(' ? 1 : c == ')' ? -1 : 0;
+                if (c == ',' && depth == 0) {
+                    attrTokens.add(attrListStr.substring(start, i));
+                    start = i + 1;
+                }
+            }
+            attrTokens.add(attrListStr.substring(start));
+            String keyClause = null;
             for (String token : attrTokens) {
                 token = token.trim();
+                if (token.toUpperCase().matches("(?s)PRIMARY\\s+KEY\\s*\\(.*")) {
+                    if (keyClause != null) {
+                        throw new IllegalArgumentException("The PRIMARY KEY clause is given more than once.");
+                    }
+                    keyClause = token.substring(token.indexOf('(') + 1, token.lastIndexOf(')'));
+                    continue;
+                }
                 // Expect format: attrName dataType [PRIMARY KEY]
                 String[] parts = token.split("\\s+");
                 if (parts.length < 2) {
@@ -118,6 +183,46 @@ public class CommandParser {
                 }
                 attributes.add(new Table.Attribute(attrName, dataType, primaryKey));
             }
+            if (keyClause != null) {
+                keyColumns = parseKeyClause(keyClause);
+            }
+        }
+
+        /**
+         * Resolves the attribute names of a PRIMARY KEY clause to key columns and flags them.
+         */
+        private int[] parseKeyClause(String clause) {
+            for (Table.Attribute attr : attributes) {
+                if (attr.isPrimaryKey()) {
+                    throw new IllegalArgumentException("Attribute '" + attr.getName()
+                            + "' is marked PRIMARY KEY although the table has a PRIMARY KEY clause.");
+                }
+            }
+            String[] names = clause.split(",");
+            int[] columns = new int[names.length];
+            for (int k = 0; k < names.length; k++) {
+                String keyName = names[k].trim();
+                columns[k] = -1;
+                for (int i = 0; i < attributes.size(); i++) {
+                    if (attributes.get(i).getName().equalsIgnoreCase(keyName)) {
+                        columns[k] = i;
+                    }
+                }
+                if (columns[k] < 0) {
+                    throw new IllegalArgumentException("Unknown attribute in PRIMARY KEY: " + keyName);
+                }
+                Table.Attribute attr = attributes.get(columns[k]);
+                if (attr.isPrimaryKey()) {
+                    throw new IllegalArgumentException("Attribute '" + attr.getName() + "' is listed twice in PRIMARY KEY.");
+                }
+                attributes.set(columns[k], new Table.Attribute(attr.getName(), attr.getDataType(), true));
+            }
+            return columns;
+        }
+
+        @Override
+        public boolean modifiesState() {
+            return true;
         }
 
         @Override
@@ -126,11 +231,112 @@ public class CommandParser {
                 System.out.println("Error: No database selected. Use the USE command first.");
                 return;
             }
-            Table newTable = new Table(tableName, attributes);
+            Table newTable = keyColumns == null ? new Table(tableName, attributes, indexType, storageType)
+                    : new Table(tableName, attributes, indexType, storageType, keyColumns);
             dbms.getCurrentDatabase().addTable(tableName, newTable);
         }
     }
 
+    public static class CreateIndexCommand implements DBMS.Command {
+        private static final Pattern SYNTAX = Pattern.compile(
+                "(?i)CREATE\\s+INDEX\\s+(\\S+)\\s+ON\\s+([^\\s(]+)\\s*\\(\\s*([^\\s)]+)\\s*\\)(?:\\s+USING\\s+(\\S+))?\\s*");
+        private String indexName;
+        private String tableName;
+        private String columnName;
+        private Table.IndexType indexType = Table.IndexType.BTREE;
+
+        /**
+         * Expected format:
+         * CREATE INDEX indexName ON tableName ( attrName ) [USING BST | BTREE | HASH | BITMAP]
+         * A HASH index only answers equality, in constant time on average. A BITMAP index suits
+         * columns with few distinct values: conditions combining such columns with AND, OR and NOT
+         * are evaluated on the bitmaps before any record is read.
+         */
+        public CreateIndexCommand(String input) {
+            java.util.regex.Matcher m = SYNTAX.matcher(input);
+            if (!m.matches()) {
+                throw new IllegalArgumentException("Expected: CREATE INDEX name ON table(column) [USING BST|BTREE|HASH|BITMAP]");
+            }
+            indexName = m.group(1);
+            tableName = m.group(2);
+            columnName = m.group(3);
+            if (m.group(4) != null) {
+                try {
+                    indexType = Table.IndexType.valueOf(m.group(4).toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown index type: " + m.group(4));
+                }
+            }
+        }
+
+        @Override
+        public boolean modifiesState() {
+            return true;
+        }
+
+        @Override
+        public void execute(DBMS dbms) {
+            if (dbms.getCurrentDatabase() == null) {
+                System.out.println("Error: No database selected.");
+                return;
+            }
+            Table table = dbms.getCurrentDatabase().getTable(tableName);
+            if (table != null)
+                table.createIndex(indexName, columnName, indexType);
+        }
+    }
+
+    public static class DropIndexCommand implements DBMS.Command {
+        private String indexName;
+        private String tableName;
+
+        /**
+         * Expected format:
+         * DROP INDEX indexName [ON tableName]
+         * Without a table, the index is looked up in every table of the current database.
+         */
+        public DropIndexCommand(String input) {
+            String[] tokens = input.substring("DROP INDEX".length()).trim().split("\\s+");
+            if (tokens[0].isEmpty()) {
+                throw new IllegalArgumentException("DROP INDEX command requires an index name.");
+            }
+            indexName = tokens[0];
+            if (tokens.length == 3 && tokens[1].equalsIgnoreCase("ON")) {
+                tableName = tokens[2];
+            } else if (tokens.length != 1) {
+                throw new IllegalArgumentException("Expected: DROP INDEX name [ON table]");
+            }
+        }
+
+        @Override
+        public boolean modifiesState() {
+            return true;
+        }
+
+        @Override
+        public void execute(DBMS dbms) {
+            Database database = dbms.getCurrentDatabase();
+            if (database == null) {
+                System.out.println("Error: No database selected.");
+                return;
+            }
+            if (tableName != null) {
+                Table table = database.getTable(tableName);
+                if (table != null)
+                    table.dropIndex(indexName);
+                return;
+            }
+            for (String tName : database.listTables()) {
+                Table table = database.getTable(tName);
+                if (table != null && table.findIndex(indexName) != null) {
+                    table.dropIndex(indexName);
+                    return;
+                }
+            }
+            System.out.println("Error: Index '" + indexName + "' does not exist in database '" + database.getName() + "'.");
+        }
+    }
+
     public static class UseDatabaseCommand implements DBMS.Command {
         private String dbName;
 
@@ -138,6 +344,11 @@ public class CommandParser {
             this.dbName = dbName;
         }
 
+        @Override
+        public boolean modifiesState() {
+            return true;
+        }
+
         @Override
         public void execute(DBMS dbms) {
             dbms.useDatabase(dbName);
@@ -189,17 +400,177 @@ public class CommandParser {
                 }
                 System.out.println();
             }
+            if (table.getPrimaryKeyColumns().length > 1) {
+                System.out.println(" - PRIMARY KEY (" + table.getPrimaryKey() + ")");
+            }
+            for (Table.SecondaryIndex index : table.getSecondaryIndexes()) {
+                System.out.println(" - INDEX " + index.getName() + " ON "
+                        + table.getAttributes().get(index.getColumn()).getName() + " (" + index.getType() + ")");
+            }
+        }
+    }
+
+    public static class AnalyzeCommand implements DBMS.Command {
+        private String tableName;
+
+        /**
+         * Expected format:
+         * ANALYZE [tableName]
+         * Without a table, every table of the current database is analyzed.
+         */
+        public AnalyzeCommand(String input) {
+            String remainder = input.substring("ANALYZE".length()).trim();
+            if (remainder.split("\\s+").length > 1) {
+                throw new IllegalArgumentException("Expected: ANALYZE [table]");
+            }
+            tableName = remainder.isEmpty() ? null : remainder;
+        }
+
+        @Override
+        public void execute(DBMS dbms) {
+            Database database = dbms.getCurrentDatabase();
+            if (database == null) {
+                System.out.println("Error: No database selected.");
+                return;
+            }
+            if (tableName != null) {
+                Table table = database.getTable(tableName);
+                if (table != null)
+                    printStatistics(table, table.analyze());
+                return;
+            }
+            for (String tName : database.listTables()) {
+                Table table = database.getTable(tName);
+                printStatistics(table, table.analyze());
+            }
+        }
+
+        private void printStatistics(Table table, Table.Statistics statistics) {
+            System.out.println("Table '" + table.getName() + "' analyzed: " + statistics.getRowCount() + " row(s).");
+            for (int c = 0; c < table.getAttributes().size(); c++) {
+                System.out.print(" - " + table.getAttributes().get(c).getName() + " : "
+                        + (statistics.min(c) == null ? 0 : statistics.distinctValues(c)) + " distinct");
+                if (statistics.nullValues(c) > 0) {
+                    System.out.print(", " + statistics.nullValues(c) + " NULL");
+                }
+                if (statistics.min(c) != null) {
+                    System.out.print(", from " + Table.formatValue(statistics.min(c)) + " to "
+                            + Table.formatValue(statistics.max(c)));
+                }
+                System.out.println();
+            }
+        }
+    }
+
+    public static class ExplainCommand implements DBMS.Command {
+        private boolean analyze;
+        private DBMS.Command statement;
+
+        /**
+         * Expected format:
+         * EXPLAIN [ANALYZE] statement
+         * where the statement is a SELECT, UPDATE, DELETE or LET. EXPLAIN prints the plan the
+         * statement would run, one node per line with its inputs indented below it and the rows
+         * the planner estimates it returns. EXPLAIN ANALYZE runs the statement, changes included,
+         * and adds the rows each node returned and the time and memory it took.
+         */
+        public ExplainCommand(String input) throws Exception {
+            String remainder = input.substring("EXPLAIN".length()).trim();
+            String[] tokens = remainder.split("\\s+", 2);
+            if (tokens[0].equalsIgnoreCase("ANALYZE") && tokens.length == 2) {
+                analyze = true;
+                remainder = tokens[1];
+            }
+            statement = parse(remainder);
+            if (!(statement instanceof SelectCommand || statement instanceof UpdateCommand
+                    || statement instanceof DeleteCommand || statement instanceof LetCommand)) {
+                throw new IllegalArgumentException("EXPLAIN supports SELECT, UPDATE, DELETE and LET statements.");
+            }
+        }
+
+        @Override
+        public boolean modifiesState() {
+            // Only EXPLAIN ANALYZE runs the statement.
+            return analyze && statement.modifiesState();
+        }
+
+        @Override
+        public void execute(DBMS dbms) {
+            if (statement instanceof SelectCommand) {
+                ((SelectCommand) statement).explain(dbms, analyze);
+            } else if (statement instanceof LetCommand) {
+                ((LetCommand) statement).explain(dbms, analyze);
+            } else if (statement instanceof UpdateCommand) {
+                ((UpdateCommand) statement).explain(dbms, analyze);
+            } else {
+                ((DeleteCommand) statement).explain(dbms, analyze);
+            }
+        }
+
+        /**
+         * Builds the plan of an UPDATE or DELETE of the rows of a table matching a condition:
+         * the statement's node over the scan of the table, filtered by the terms its access path
+         * does not answer. Only the statement's node is measured, as the table runs the scan
+         * itself. Returns null (after reporting the problem) if the condition cannot be parsed.
+         */
+        static Operator.Profile modificationPlan(String description, Table table, String condition, boolean analyze) {
+            Table.Condition compiled = null;
+            if (!condition.isEmpty()) {
+                try {
+                    compiled = Table.compileCondition(condition, table.getAttributes());
+                } catch (Exception e) {
+                    System.out.println("Error parsing condition: " + e.getMessage());
+                    return null;
+                }
+            }
+            Table.Condition residual = table.residual(compiled);
+            Operator input = new Operator.Profile(null, "Scan " + table.getName() + ": " + table.describeAccess(compiled),
+                    SelectCommand.scanRows(table, compiled, residual), false);
+            double rows = table.estimateRows(compiled);
+            if (residual != null)
+                input = new Operator.Profile(null, "Filter " + residual, rows, false, input);
+            return new Operator.Profile(null, description, rows, analyze, input);
         }
     }
 
     public static class SelectCommand implements DBMS.Command {
+        private static final Pattern LIMIT_CLAUSE = Pattern.compile("(?i)\\s+LIMIT\\s+(\\d+)\\s*$");
+        private static final Pattern GROUP_BY_CLAUSE = Pattern.compile("(?i)\\s+GROUP\\s+BY\\s+");
+        private static final Pattern ORDER_BY_CLAUSE = Pattern.compile("(?i)\\s+ORDER\\s+BY\\s+");
+        private static final Pattern ORDER_KEY = Pattern.compile("(?i)(.+?)(?:\\s+(ASC|DESC))?");
+        private static final Pattern AGGREGATE = Pattern.compile("(?i)(COUNT|SUM|AVG|MIN|MAX)\\s*\\(\\s*(.*?)\\s*\\)");
+
         private java.util.List<String> columns = new java.util.ArrayList<>();
         private java.util.List<String> tableNames = new java.util.ArrayList<>();
         private String condition = "";
+        private int limit = -1; // -1 means no LIMIT clause.
+        private java.util.List<String> groupBy = new java.util.ArrayList<>();
+        private java.util.List<String> orderBy = new java.util.ArrayList<>();
+        private java.util.List<Boolean> descending = new java.util.ArrayList<>(); // Per ORDER BY column.
+        private boolean explain; // Whether buildPlan wraps its operators in Profile nodes,
+        private boolean analyze; // and whether these measure them.
+        private Aggregation aggregation; // How plan() resolved GROUP BY and the aggregates, if any.
+        private int[] orderColumns; // How plan() resolved ORDER BY (see order()), or null.
+
+        /**
+         * How a SELECT with GROUP BY or aggregate functions is computed. The plan's rows go
+         * through a HashAggregate whose group columns and aggregate arguments are the first
+         * groups and the remaining entries of the projection passed to buildPlan; the outputs
+         * give the position of each SELECT item in the rows of the aggregate.
+         */
+        private static class Aggregation {
+            int groups;
+            Operator.HashAggregate.Function[] functions;
+            Table.Attribute.DataType[] types;
+            int[] outputs;
+        }
 
         /**
          * Expected format (simplified):
          * SELECT col1, col2, ... FROM tableName1 [, tableName2, ...] [WHERE condition]
+         *     [GROUP BY col, ...] [ORDER BY col [ASC|DESC], ...] [LIMIT n]
+         * where a SELECT item can also be an aggregate: COUNT(*), or COUNT, SUM, AVG, MIN or MAX
+         * of a column.
          */
         public SelectCommand(String input) throws Exception {
             String remainder = input.substring("SELECT".length()).trim();
@@ -218,6 +589,30 @@ public class CommandParser {
 
             // Parse the FROM part.
             String afterFrom = remainder.substring(fromIndex + "FROM".length()).trim();
+            java.util.regex.Matcher limitMatcher = LIMIT_CLAUSE.matcher(afterFrom);
+            if (limitMatcher.find()) {
+                limit = Integer.parseInt(limitMatcher.group(1));
+                afterFrom = afterFrom.substring(0, limitMatcher.start()).trim();
+            }
+            java.util.regex.Matcher orderMatcher = ORDER_BY_CLAUSE.matcher(afterFrom);
+            if (orderMatcher.find()) {
+                for (String key : afterFrom.substring(orderMatcher.end()).split(",")) {
+                    java.util.regex.Matcher keyMatcher = ORDER_KEY.matcher(key.trim());
+                    if (!keyMatcher.matches()) {
+                        throw new IllegalArgumentException("ORDER BY needs a column: " + afterFrom);
+                    }
+                    orderBy.add(keyMatcher.group(1));
+                    descending.add("DESC".equalsIgnoreCase(keyMatcher.group(2)));
+                }
+                afterFrom = afterFrom.substring(0, orderMatcher.start()).trim();
+            }
+            java.util.regex.Matcher groupMatcher = GROUP_BY_CLAUSE.matcher(afterFrom);
+            if (groupMatcher.find()) {
+                for (String col : afterFrom.substring(groupMatcher.end()).split(",")) {
+                    groupBy.add(col.trim());
+                }
+                afterFrom = afterFrom.substring(0, groupMatcher.start()).trim();
+            }
             int whereIndex = afterFrom.toUpperCase().indexOf("WHERE");
             String tablesPart;
             if (whereIndex != -1) {
@@ -234,13 +629,86 @@ public class CommandParser {
 
         @Override
         public void execute(DBMS dbms) {
+            Operator plan = plan(dbms);
+            if (plan == null)
+                return;
+            if (tableNames.size() > 1) {
+                System.out.println("  -------------------------------------");
+                System.out.println("\t" + String.join("\t", columns));
+                System.out.println("  --------------------------------------");
+                plan.open();
+                try {
+                    int count = 1;
+                    Table.Record rec;
+                    while ((rec = plan.next()) != null) {
+                        printRow(count++, rec);
+                    }
+                } finally {
+                    plan.close();
+                }
+            } else {
+                plan.open();
+                try {
+                    Table.Record record = plan.next();
+                    if (record == null) {
+                        System.out.println("Nothing found.");
+                        return;
+                    }
+                    System.out.println("  -------------------------------------");
+                    System.out.println("\t" + String.join("\t", columns));
+                    System.out.println("  -------------------------------------");
+                    int count = 1;
+                    do {
+                        printRow(count++, record);
+                    } while ((record = plan.next()) != null);
+                } finally {
+                    plan.close();
+                }
+            }
+        }
+
+        /**
+         * Shows the plan of this statement with EXPLAIN; with ANALYZE the plan is run first,
+         * its rows counted instead of printed, so the nodes show what they actually did.
+         */
+        void explain(DBMS dbms, boolean analyze) {
+            explain = true;
+            this.analyze = analyze;
+            Operator plan;
+            try {
+                plan = plan(dbms);
+            } finally {
+                explain = false;
+            }
+            if (plan == null)
+                return;
+            if (analyze) {
+                plan.open();
+                try {
+                    while (plan.next() != null) {
+                        // The Profile nodes count the rows.
+                    }
+                } finally {
+                    plan.close();
+                }
+            }
+            ((Operator.Profile) plan).print("");
+        }
+
+        /**
+         * Resolves the FROM tables, compiles the condition and builds the operator tree of this
+         * statement. Returns null (after reporting the problem) if it cannot run.
+         */
+        private Operator plan(DBMS dbms) {
+            aggregation = null;
+            orderColumns = null;
             if (dbms.getCurrentDatabase() == null) {
                 System.out.println("Error: No database selected.");
-                return;
+                return null;
             }
             if (tableNames.size() > 1) {
-                // Multi-table join (Cartesian product)
-                List<List<Table.Record>> listOfRecordLists = new ArrayList<>();
+                // Multi-table join
+                List<Table> tables = new ArrayList<>();
                 // Build a combined schema with qualified attribute names.
                 List<Table.Attribute> combinedSchema = new ArrayList<>();
 
@@ -248,9 +716,9 @@ public class CommandParser {
                     Table t = dbms.getCurrentDatabase().getTable(tName);
                     if (t == null) {
                         System.out.println("Error: Table '" + tName + "' does not exist.");
-                        return;
+                        return null;
                     }
-                    listOfRecordLists.add(t.getRecords());
+                    tables.add(t);
                     for (Table.Attribute attr : t.getAttributes()) {
                         // Qualify attribute name with table name.
                         combinedSchema.add(new Table.Attribute(tName + "." + attr.getName(), attr.getDataType(),
@@ -258,126 +726,795 @@ public class CommandParser {
                     }
                 }
 
-                // Compute the Cartesian product (join).
-                List<Table.Record> joinedRecords = cartesianProduct(listOfRecordLists);
-
-                // Filter the joined records if a condition is provided.
-                List<Table.Record> finalRecords = new ArrayList<>();
+                // Compile the condition once against the combined schema.
+                Table.Condition compiled = null;
                 if (condition != null && !condition.trim().isEmpty()) {
-                    for (Table.Record rec : joinedRecords) {
-                        // Evaluate condition on the joined record using the combined schema.
-                        if (evaluateConditionOnJoinedRecord(rec, combinedSchema, condition)) {
-                            finalRecords.add(rec);
-                        }
-                    }
-                } else {
-                    finalRecords = joinedRecords;
+                    compiled = compileJoinCondition(combinedSchema);
+                    if (compiled == null)
+                        return null;
                 }
 
                 // For simplicity, assume that the SELECT list columns refer to the names in the
                 // combined schema.
-                System.out.println("  -------------------------------------");
-                System.out.println("\t" + String.join("\t", columns));
-                System.out.println("  --------------------------------------");
-                int count = 1;
-                for (Table.Record rec : finalRecords) {
-                    System.out.print(count + ".\t");
-                    List<Object> vals = rec.getValues();
-                    // For each column in the SELECT list, find its index in the combined schema.
-                    for (String col : columns) {
-                        int idx = findIndexInCombinedSchema(combinedSchema, col);
-                        if (idx != -1 && idx < vals.size()) {
-                            System.out.print(vals.get(idx) + "\t");
-                        } else {
-                            System.out.print("NULL\t");
+                int[] projection = new int[columns.size()];
+                for (int i = 0; i < columns.size(); i++) {
+                    projection[i] = findIndexInCombinedSchema(combinedSchema, columns.get(i));
+                }
+                if (groups()) {
+                    projection = aggregate(combinedSchema);
+                    if (projection == null)
+                        return null;
+                }
+                if (!orderBy.isEmpty()) {
+                    orderColumns = order(combinedSchema, projection);
+                    if (orderColumns == null)
+                        return null;
+                }
+                return buildPlan(tables, combinedSchema, compiled, projection);
+            }
+            // Single table select
+            String tableName = tableNames.get(0);
+            Table table = dbms.getCurrentDatabase().getTable(tableName);
+            if (table == null)
+                return null;
+            java.util.List<Table.Attribute> attrs = table.getAttributes();
+            Table.Condition compiled = null;
+            if (condition != null && !condition.trim().isEmpty()) {
+                try {
+                    compiled = Table.compileCondition(condition, attrs);
+                } catch (Exception e) {
+                    System.out.println("Error parsing condition: " + e.getMessage());
+                    System.out.println("Nothing found.");
+                    return null;
+                }
+            }
+            int[] projection = new int[columns.size()];
+            for (int c = 0; c < columns.size(); c++) {
+                projection[c] = -1;
+                for (int i = 0; i < attrs.size(); i++) {
+                    if (attrs.get(i).getName().equalsIgnoreCase(columns.get(c))) {
+                        projection[c] = i;
+                        break;
+                    }
+                }
+            }
+            if (groups()) {
+                projection = aggregate(attrs);
+                if (projection == null)
+                    return null;
+            }
+            if (!orderBy.isEmpty()) {
+                orderColumns = order(attrs, projection);
+                if (orderColumns == null)
+                    return null;
+            }
+            return buildPlan(java.util.Collections.singletonList(table), attrs, compiled, projection);
+        }
+
+        /**
+         * Whether the statement has a GROUP BY clause or aggregate functions.
+         */
+        boolean groups() {
+            if (!groupBy.isEmpty())
+                return true;
+            for (String col : columns) {
+                if (AGGREGATE.matcher(col).matches())
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Resolves the GROUP BY columns and the aggregates of the SELECT list against the schema
+         * into the aggregation buildPlan applies, and returns the projection to pass to it.
+         * Returns null (after reporting the problem) for an unknown column, a SELECT item that
+         * is neither grouped nor aggregated, or SUM or AVG of a TEXT column.
+         */
+        private int[] aggregate(List<Table.Attribute> schema) {
+            List<Integer> inputs = new ArrayList<>();
+            for (String col : groupBy) {
+                int position = findIndexInCombinedSchema(schema, col);
+                if (position < 0) {
+                    System.out.println("Error: Unknown column in GROUP BY: " + col);
+                    return null;
+                }
+                inputs.add(position);
+            }
+            Aggregation result = new Aggregation();
+            result.groups = groupBy.size();
+            List<Operator.HashAggregate.Function> functions = new ArrayList<>();
+            List<Table.Attribute.DataType> types = new ArrayList<>();
+            result.outputs = new int[columns.size()];
+            for (int i = 0; i < columns.size(); i++) {
+                String col = columns.get(i);
+                java.util.regex.Matcher matcher = AGGREGATE.matcher(col);
+                if (!matcher.matches()) {
+                    int position = findIndexInCombinedSchema(schema, col);
+                    result.outputs[i] = position < 0 ? -1 : inputs.subList(0, result.groups).indexOf(position);
+                    if (result.outputs[i] < 0) {
+                        System.out.println("Error: Column '" + col + "' must appear in GROUP BY or in an aggregate function.");
+                        return null;
+                    }
+                    continue;
+                }
+                Operator.HashAggregate.Function function = Operator.HashAggregate.Function
+                        .valueOf(matcher.group(1).toUpperCase());
+                int position = -1;
+                Table.Attribute.DataType type = null;
+                if (matcher.group(2).equals("*")) {
+                    if (function != Operator.HashAggregate.Function.COUNT) {
+                        System.out.println("Error: Only COUNT accepts *: " + col);
+                        return null;
+                    }
+                } else {
+                    position = findIndexInCombinedSchema(schema, matcher.group(2));
+                    if (position < 0) {
+                        System.out.println("Error: Unknown column in " + col);
+                        return null;
+                    }
+                    type = schema.get(position).getDataType();
+                    if (type == Table.Attribute.DataType.TEXT && (function == Operator.HashAggregate.Function.SUM
+                            || function == Operator.HashAggregate.Function.AVG)) {
+                        System.out.println("Error: " + function + " needs a numeric column: " + matcher.group(2));
+                        return null;
+                    }
+                }
+                result.outputs[i] = result.groups + functions.size();
+                functions.add(function);
+                types.add(type);
+                inputs.add(position);
+            }
+            result.functions = functions.toArray(new Operator.HashAggregate.Function[0]);
+            result.types = types.toArray(new Table.Attribute.DataType[0]);
+            aggregation = result;
+            int[] projection = new int[inputs.size()];
+            for (int i = 0; i < projection.length; i++) {
+                projection[i] = inputs.get(i);
+            }
+            return projection;
+        }
+
+        /**
+         * Resolves the ORDER BY columns into the positions buildPlan sorts the rows on: positions
+         * in the schema, or with aggregation (see Aggregation) positions in the rows of the
+         * HashAggregate, where a column must be an item of the SELECT list or a GROUP BY column.
+         * Returns null (after reporting the problem) if a column cannot be resolved.
+         */
+        int[] order(List<Table.Attribute> schema, int[] projection) {
+            int[] result = new int[orderBy.size()];
+            for (int k = 0; k < result.length; k++) {
+                String col = orderBy.get(k);
+                if (aggregation == null) {
+                    result[k] = findIndexInCombinedSchema(schema, col);
+                    if (result[k] < 0) {
+                        System.out.println("Error: Unknown column in ORDER BY: " + col);
+                        return null;
+                    }
+                    continue;
+                }
+                result[k] = -1;
+                for (int i = 0; i < columns.size(); i++) {
+                    if (columns.get(i).replaceAll("\\s+", "").equalsIgnoreCase(col.replaceAll("\\s+", ""))) {
+                        result[k] = aggregation.outputs[i];
+                        break;
+                    }
+                }
+                int position = result[k] < 0 ? findIndexInCombinedSchema(schema, col) : -1;
+                for (int g = 0; position >= 0 && g < aggregation.groups; g++) {
+                    if (projection[g] == position) {
+                        result[k] = g;
+                        break;
+                    }
+                }
+                if (result[k] < 0) {
+                    System.out.println("Error: ORDER BY column '" + col + "' must appear in GROUP BY or in the SELECT list.");
+                    return null;
+                }
+            }
+            return result;
+        }
+
+        private void printRow(int count, Table.Record row) {
+            System.out.print(count + ".\t");
+            for (Object val : row.getValues()) {
+                System.out.print(Table.formatValue(val) + "\t");
+            }
+            System.out.println();
+        }
+
+        /**
+         * Builds the operator tree for this statement: the FROM tables joined left to right,
+         * filtered by the compiled condition (null keeps every row), projected onto the given
+         * schema positions and cut off by the LIMIT clause, if any.
+         * The tables are joined in another order when the table statistics estimate it produces
+         * fewer intermediate rows (see JoinEstimate); the rows are still projected in the order
+         * requested. When AND terms of the condition equate a column of the next table with a
+         * column of the tables already joined, that step runs as a merge join if the term is on
+         * the primary key of the next table and the joined rows arrive in order of the other
+         * column, probes an index of the next table if the term is on its primary key or on a
+         * column with a secondary index, and otherwise runs as a hash join; of those available,
+         * the one with the lowest estimated cost. Steps without such a term run as a merge band join if
+         * terms bound a column of the next table with <, <=, > or >= by columns already joined, and
+         * otherwise fall back to a nested-loop cross product. Every other AND term
+         * is applied as soon as all of the columns it references are available; terms on a single
+         * table also pick its access path, and those the access path answers (index key bounds)
+         * are not evaluated again. Terms on a table reached by an index probe are instead checked
+         * once it is joined. With GROUP BY or aggregates (see Aggregation), the joined rows
+         * are aggregated by a HashAggregate before the SELECT items are projected. With ORDER BY
+         * (see order()), the rows are sorted before they are projected, unless the first table is
+         * scanned in primary-key order and the ORDER BY columns are a leading part of its primary
+         * key, all ascending; a LIMIT lets the sort keep only the first rows.
+         */
+        Operator buildPlan(List<Table> tables, List<Table.Attribute> combinedSchema, Table.Condition compiled,
+                int[] projection) {
+            List<Table.Condition> pending = compiled == null ? new ArrayList<>() : Table.conjuncts(compiled);
+            JoinEstimate estimate = null;
+            int[] sortColumns = orderColumns;
+            if (tables.size() > 1) {
+                estimate = new JoinEstimate(tables, pending);
+                int[] order = estimate.bestOrder();
+                if (order != null) {
+                    // Lay the columns out in join order and move every reference to them.
+                    int[] position = new int[combinedSchema.size()];
+                    List<Table> reordered = new ArrayList<>();
+                    List<Table.Attribute> schema = new ArrayList<>();
+                    for (int t : order) {
+                        reordered.add(tables.get(t));
+                        for (int c = 0; c < tables.get(t).getAttributes().size(); c++) {
+                            position[estimate.offsets[t] + c] = schema.size();
+                            schema.add(combinedSchema.get(estimate.offsets[t] + c));
                         }
                     }
-                    System.out.println();
-                    count++;
+                    for (int i = 0; i < pending.size(); i++) {
+                        pending.set(i, Table.remap(pending.get(i), position));
+                    }
+                    int[] moved = new int[projection.length];
+                    for (int i = 0; i < projection.length; i++) {
+                        moved[i] = projection[i] < 0 ? projection[i] : position[projection[i]];
+                    }
+                    if (sortColumns != null && aggregation == null) {
+                        sortColumns = sortColumns.clone();
+                        for (int k = 0; k < sortColumns.length; k++) {
+                            sortColumns[k] = position[sortColumns[k]];
+                        }
+                    }
+                    tables = reordered;
+                    combinedSchema = schema;
+                    projection = moved;
+                    estimate = new JoinEstimate(tables, pending);
                 }
-            } else {
-                // Single table select (existing behavior)
-                String tableName = tableNames.get(0);
-                Table table = dbms.getCurrentDatabase().getTable(tableName);
-                if (table == null)
-                    return;
-                java.util.List<Table.Record> records = table.select(condition);
-                if (records.isEmpty()) {
-                    System.out.println("Nothing found.");
-                    return;
+            }
+            Operator plan = null;
+            double rows = 0; // Estimated rows of the plan so far.
+            int width = 0;
+            int joined = 0; // Tables joined so far, as a set of positions in tables.
+            int orderedBy = -1; // Position of the column the joined rows ascend on, if any.
+            int[] keyOrder = new int[0]; // Primary key columns of the first table, if scanned in key order.
+            for (Table table : tables) {
+                int tableWidth = table.getAttributes().size();
+                if (plan == null) {
+                    Table.Condition local = Table.allOf(takeAvailableConditions(pending, tableWidth));
+                    Table.Condition residual = table.residual(local);
+                    // Only EXPLAIN shows these estimates, and gathering statistics reads the whole table.
+                    plan = node(new Operator.Scan(table, local), "Scan " + table.getName() + ": "
+                            + table.describeAccess(local), explain ? scanRows(table, local, residual) : 0);
+                    if (table.scansInKeyOrder(local)) {
+                        orderedBy = table.getPrimaryKeyIndex();
+                        keyOrder = table.getPrimaryKeyColumns();
+                    }
+                    rows = explain ? table.estimateRows(local) : 0;
+                    if (residual != null)
+                        plan = node(new Operator.Filter(plan, residual, combinedSchema), "Filter " + residual, rows, plan);
+                    width = tableWidth;
+                    joined = 1;
+                    continue;
                 }
-                System.out.println("  -------------------------------------");
-                System.out.println("\t" + String.join("\t", columns));
-                System.out.println("  -------------------------------------");
-                int count = 1;
-                for (Table.Record record : records) {
-                    System.out.print(count + ".\t");
-                    java.util.List<Object> vals = record.getValues();
-                    for (String col : columns) {
-                        int idx = -1;
-                        java.util.List<Table.Attribute> attrs = table.getAttributes();
-                        for (int i = 0; i < attrs.size(); i++) {
-                            if (attrs.get(i).getName().equalsIgnoreCase(col)) {
-                                idx = i;
-                                break;
-                            }
+                // Rows read per step: the merge and hash joins read both inputs once, while an
+                // index probe descends the index once per joined row.
+                double outerRows = estimate.rows(joined);
+                double innerRows = table.getRowCount();
+                double probeCost = outerRows * (1 + Math.log(innerRows + 1) / Math.log(2));
+                // Terms on this table alone filter its rows as they are scanned, before the join.
+                int step = Integer.bitCount(joined);
+                List<Table.Condition> own = takeTableConditions(pending, width, tableWidth);
+                Table.Condition innerLocal = own.isEmpty() ? null : Table.remap(Table.allOf(own), estimate.shift(step));
+                double keptRows = estimate.keptRows[step];
+                // Collect equality terms linking this table to the columns joined so far.
+                List<int[]> keyColumns = new ArrayList<>(); // {outer position, inner position}
+                List<Table.Condition> joinTerms = new ArrayList<>();
+                java.util.Iterator<Table.Condition> it = pending.iterator();
+                while (it.hasNext()) {
+                    Table.Condition term = it.next();
+                    int[] cols = Table.equalityColumns(term);
+                    if (cols == null)
+                        continue;
+                    if (cols[0] < width && cols[1] >= width && cols[1] < width + tableWidth) {
+                        keyColumns.add(new int[] { cols[0], cols[1] - width });
+                    } else if (cols[1] < width && cols[0] >= width && cols[0] < width + tableWidth) {
+                        keyColumns.add(new int[] { cols[1], cols[0] - width });
+                    } else {
+                        continue;
+                    }
+                    joinTerms.add(term);
+                    it.remove();
+                }
+                int merge = mergeJoinTerm(table, keyColumns, combinedSchema, width, orderedBy);
+                if (!table.scansInKeyOrder(innerLocal))
+                    merge = -1; // The inner rows come through another access path, out of key order.
+                int probe = indexJoinTerm(table, keyColumns, combinedSchema, width);
+                if (merge >= 0 && probe >= 0 && probeCost < outerRows + innerRows)
+                    merge = -1;
+                if (probe >= 0 && merge < 0 && probeCost > outerRows + 2 * innerRows)
+                    probe = -1; // Building a hash table of the inner rows is cheaper.
+                if (merge >= 0) {
+                    // Both inputs ascend on the join columns; other join terms are checked once joined.
+                    Table.Condition term = joinTerms.remove(merge);
+                    pending.addAll(joinTerms);
+                    Operator scan = scan(table, innerLocal, 1);
+                    plan = node(new Operator.MergeJoin(plan, scan, keyColumns.get(merge)[0], keyColumns.get(merge)[1],
+                            true, keyColumns.get(merge)[1] == table.getPrimaryKeyIndex()),
+                            "Merge join with " + table.getName() + " on " + term,
+                            outerRows * keptRows * estimate.selectivity(term), plan, scan);
+                } else if (probe >= 0) {
+                    // Probe the index; any other join terms and the terms on this table alone are
+                    // checked once joined.
+                    Table.Condition term = joinTerms.remove(probe);
+                    pending.addAll(joinTerms);
+                    pending.addAll(own);
+                    double joinRows = outerRows * innerRows * estimate.selectivity(term);
+                    Operator.IndexNestedLoopJoin join = new Operator.IndexNestedLoopJoin(plan, table,
+                            keyColumns.get(probe)[0], keyColumns.get(probe)[1]);
+                    Operator.Profile probes = null;
+                    if (explain) {
+                        probes = new Operator.Profile(null, "Probe " + table.getName() + ": "
+                                + table.describeLookup(keyColumns.get(probe)[1]), joinRows, analyze);
+                        join.measureProbes(probes);
+                    }
+                    plan = node(join, "Index nested loop join with " + table.getName() + " on " + term, joinRows, plan,
+                            probes);
+                } else if (keyColumns.isEmpty()) {
+                    plan = bandJoin(plan, table, innerLocal, pending, combinedSchema, width, orderedBy, estimate,
+                            outerRows, keptRows);
+                } else {
+                    Table.Attribute.DataType[][] types = new Table.Attribute.DataType[keyColumns.size()][];
+                    double joinRows = outerRows * keptRows;
+                    for (int k = 0; k < keyColumns.size(); k++) {
+                        int[] cols = keyColumns.get(k);
+                        types[k] = new Table.Attribute.DataType[] { combinedSchema.get(cols[0]).getDataType(),
+                                combinedSchema.get(width + cols[1]).getDataType() };
+                        joinRows *= estimate.selectivity(joinTerms.get(k));
+                    }
+                    Operator scan = scan(table, innerLocal, 1);
+                    plan = node(new Operator.HashJoin(plan, scan, keyColumns, types),
+                            "Hash join with " + table.getName() + " on " + Table.allOf(joinTerms), joinRows, plan, scan);
+                }
+                width += tableWidth;
+                joined = joined << 1 | 1;
+                rows = estimate.rows(joined);
+                Table.Condition ready = Table.allOf(takeAvailableConditions(pending, width));
+                if (ready != null)
+                    plan = node(new Operator.Filter(plan, ready, combinedSchema), "Filter " + ready, rows, plan);
+            }
+            if (aggregation != null) {
+                int[] groupColumns = java.util.Arrays.copyOfRange(projection, 0, aggregation.groups);
+                // At most the product of the distinct counts of the group columns; only EXPLAIN
+                // shows it, and gathering statistics reads the whole table.
+                double groups = 1;
+                for (int g = 0; explain && g < groupColumns.length; g++) {
+                    int first = 0;
+                    for (Table table : tables) {
+                        int tableWidth = table.getAttributes().size();
+                        if (groupColumns[g] < first + tableWidth) {
+                            groups *= table.getStatistics().distinctValues(groupColumns[g] - first);
+                            break;
                         }
-                        if (idx != -1 && idx < vals.size()) {
-                            System.out.print(vals.get(idx) + "\t");
-                        } else {
-                            System.out.print("NULL\t");
+                        first += tableWidth;
+                    }
+                }
+                rows = groupColumns.length == 0 ? 1 : Math.max(1, Math.min(rows, groups));
+                List<String> grouped = new ArrayList<>();
+                for (int column : groupColumns) {
+                    grouped.add(combinedSchema.get(column).getName());
+                }
+                List<String> aggregates = new ArrayList<>();
+                for (String col : columns) {
+                    if (AGGREGATE.matcher(col).matches())
+                        aggregates.add(col);
+                }
+                plan = node(new Operator.HashAggregate(plan, groupColumns, aggregation.functions,
+                        java.util.Arrays.copyOfRange(projection, aggregation.groups, projection.length), aggregation.types),
+                        "Hash aggregate" + (grouped.isEmpty() ? "" : " by " + String.join(", ", grouped))
+                                + (aggregates.isEmpty() ? "" : ": " + String.join(", ", aggregates)), rows, plan);
+                if (sortColumns != null) {
+                    plan = sort(plan, sortColumns, rows);
+                    rows = limit >= 0 ? Math.min(rows, limit) : rows;
+                }
+                plan = node(new Operator.Project(plan, aggregation.outputs), "Project " + String.join(", ", columns),
+                        rows, plan);
+            } else {
+                boolean inOrder = sortColumns != null && sortColumns.length <= keyOrder.length;
+                for (int k = 0; inOrder && k < sortColumns.length; k++) {
+                    inOrder = sortColumns[k] == keyOrder[k] && !descending.get(k);
+                }
+                if (sortColumns != null && !inOrder) {
+                    plan = sort(plan, sortColumns, rows);
+                    rows = limit >= 0 ? Math.min(rows, limit) : rows;
+                }
+                List<String> projected = new ArrayList<>();
+                for (int column : projection) {
+                    projected.add(column < 0 ? "NULL" : combinedSchema.get(column).getName());
+                }
+                plan = node(new Operator.Project(plan, projection), "Project " + String.join(", ", projected), rows,
+                        plan);
+            }
+            if (limit >= 0)
+                plan = node(new Operator.Limit(plan, limit), "Limit " + limit, Math.min(rows, limit), plan);
+            return plan;
+        }
+
+        /**
+         * Sorts the rows of the plan on the given positions in the order of the ORDER BY clause.
+         */
+        private Operator sort(Operator plan, int[] sortColumns, double rows) {
+            boolean[] desc = new boolean[sortColumns.length];
+            List<String> keys = new ArrayList<>();
+            for (int k = 0; k < desc.length; k++) {
+                desc[k] = descending.get(k);
+                keys.add(orderBy.get(k) + (desc[k] ? " DESC" : ""));
+            }
+            boolean top = limit >= 0 && limit <= Operator.Sort.MEMORY_ROWS;
+            return node(new Operator.Sort(plan, sortColumns, desc, limit),
+                    (top ? "Top-" + limit + " sort by " : "Sort by ") + String.join(", ", keys),
+                    top ? Math.min(rows, limit) : rows, plan);
+        }
+
+        /**
+         * Returns the operator as it goes into the plan: unchanged, or while explaining wrapped in
+         * a Profile node with its description, estimated rows and inputs.
+         */
+        private Operator node(Operator operator, String description, double estimatedRows, Operator... inputs) {
+            if (!explain)
+                return operator;
+            return new Operator.Profile(operator, description, estimatedRows, analyze, inputs);
+        }
+
+        /**
+         * Returns a scan of the rows of a join's inner table that satisfy local, its terms on that
+         * table alone, shown while explaining as the join's inner input with the rows it is
+         * estimated to read in the given number of passes.
+         */
+        private Operator scan(Table table, Table.Condition local, double passes) {
+            Table.Condition residual = table.residual(local);
+            Operator scan = node(new Operator.Scan(table, local), "Scan " + table.getName() + ": "
+                    + table.describeAccess(local), explain ? passes * scanRows(table, local, residual) : 0);
+            if (residual != null)
+                scan = node(new Operator.Filter(scan, residual, table.getAttributes()), "Filter " + residual,
+                        explain ? passes * table.estimateRows(local) : 0, scan);
+            return scan;
+        }
+
+        /**
+         * Estimates the rows a scan reads: those satisfying the terms its access path answers, or
+         * every row for a full scan.
+         */
+        private static double scanRows(Table table, Table.Condition local, Table.Condition residual) {
+            if (local == null || residual == local)
+                return table.getRowCount();
+            List<Table.Condition> answered = Table.conjuncts(local);
+            if (residual != null)
+                answered.removeAll(Table.conjuncts(residual));
+            return table.estimateRows(Table.allOf(answered));
+        }
+
+        /**
+         * Estimated row counts of the joins of some of the FROM tables, from the statistics of the
+         * tables: each table contributes its rows kept by the AND terms on it alone, and each term
+         * over several tables multiplies the rows by its selectivity once all of them are joined;
+         * 1 / (distinct values of the more varied column) for an equality, and
+         * Statistics.DEFAULT_SELECTIVITY otherwise.
+         * Sets of tables are bit masks of their positions in the FROM list.
+         */
+        static class JoinEstimate {
+            // Most tables whose join orders are all compared; larger joins keep the FROM order.
+            private static final int MAX_REORDERED = 10;
+
+            private final List<Table> tables;
+            final int[] offsets; // Position of the first column of each table in the combined schema.
+            private final double[] keptRows;
+            private final List<Integer> termTables = new ArrayList<>();
+            private final List<Double> termSelectivity = new ArrayList<>();
+
+            JoinEstimate(List<Table> tables, List<Table.Condition> terms) {
+                this.tables = tables;
+                offsets = new int[tables.size() + 1];
+                for (int t = 0; t < tables.size(); t++) {
+                    offsets[t + 1] = offsets[t] + tables.get(t).getAttributes().size();
+                }
+                List<List<Table.Condition>> local = new ArrayList<>();
+                for (int t = 0; t < tables.size(); t++) {
+                    local.add(new ArrayList<>());
+                }
+                for (Table.Condition term : terms) {
+                    java.util.BitSet columns = Table.columns(term);
+                    int mask = 0;
+                    for (int c = columns.nextSetBit(0); c >= 0; c = columns.nextSetBit(c + 1)) {
+                        mask |= 1 << tableOf(c);
+                    }
+                    if (Integer.bitCount(mask) == 1) {
+                        local.get(Integer.numberOfTrailingZeros(mask)).add(term);
+                    } else if (mask != 0) {
+                        termTables.add(mask);
+                        termSelectivity.add(selectivity(term));
+                    }
+                }
+                keptRows = new double[tables.size()];
+                for (int t = 0; t < tables.size(); t++) {
+                    Table.Condition own = Table.allOf(local.get(t));
+                    keptRows[t] = tables.get(t).estimateRows(own == null ? null : Table.remap(own, shift(t)));
+                }
+            }
+
+            private int tableOf(int column) {
+                int t = 0;
+                while (t + 1 < tables.size() && offsets[t + 1] <= column) {
+                    t++;
+                }
+                return t;
+            }
+
+            /**
+             * Maps the combined schema positions of table t onto its own schema.
+             */
+            private int[] shift(int t) {
+                int[] position = new int[offsets[tables.size()]];
+                for (int c = offsets[t]; c < offsets[t + 1]; c++) {
+                    position[c] = c - offsets[t];
+                }
+                return position;
+            }
+
+            double selectivity(Table.Condition term) {
+                int[] cols = Table.equalityColumns(term);
+                if (cols == null)
+                    return Table.Statistics.DEFAULT_SELECTIVITY;
+                int left = tableOf(cols[0]), right = tableOf(cols[1]);
+                int distinct = Math.max(tables.get(left).getStatistics().distinctValues(cols[0] - offsets[left]),
+                        tables.get(right).getStatistics().distinctValues(cols[1] - offsets[right]));
+                return 1.0 / distinct;
+            }
+
+            /**
+             * Estimates the rows of the join of the given tables.
+             */
+            double rows(int mask) {
+                double rows = 1;
+                for (int t = 0; t < tables.size(); t++) {
+                    if ((mask & 1 << t) != 0)
+                        rows *= keptRows[t];
+                }
+                for (int k = 0; k < termTables.size(); k++) {
+                    if ((termTables.get(k) & ~mask) == 0)
+                        rows *= termSelectivity.get(k);
+                }
+                return rows;
+            }
+
+            /**
+             * Estimates the rows read to join table t to the join of the tables in mask and the
+             * rows it produces. A step with no term linking t to those tables is a cross product
+             * reading all rows of t once per joined row.
+             */
+            private double stepCost(int mask, int t) {
+                int next = mask | 1 << t;
+                boolean linked = false;
+                for (int tablesOfTerm : termTables) {
+                    linked |= (tablesOfTerm & 1 << t) != 0 && (tablesOfTerm & ~next) == 0;
+                }
+                double inner = tables.get(t).getRowCount();
+                return (linked ? rows(mask) + inner : rows(mask) * inner) + rows(next);
+            }
+
+            /**
+             * Returns the order of the tables (positions in the FROM list) that the estimates say
+             * reads and produces the fewest rows, comparing every left-deep order by dynamic
+             * programming over the sets of tables; or null if that is the FROM order.
+             */
+            int[] bestOrder() {
+                int n = tables.size();
+                if (n < 2 || n > MAX_REORDERED)
+                    return null;
+                double[] cost = new double[1 << n];
+                int[] last = new int[1 << n];
+                java.util.Arrays.fill(cost, Double.POSITIVE_INFINITY);
+                for (int t = 0; t < n; t++) {
+                    cost[1 << t] = tables.get(t).getRowCount();
+                    last[1 << t] = t;
+                }
+                for (int mask = 1; mask < 1 << n; mask++) {
+                    for (int t = 0; t < n && cost[mask] < Double.POSITIVE_INFINITY; t++) {
+                        if ((mask & 1 << t) != 0)
+                            continue;
+                        double c = cost[mask] + stepCost(mask, t);
+                        if (c < cost[mask | 1 << t]) {
+                            cost[mask | 1 << t] = c;
+                            last[mask | 1 << t] = t;
                         }
                     }
-                    System.out.println();
-                    count++;
                 }
+                double fromOrder = tables.get(0).getRowCount();
+                for (int t = 1; t < n; t++) {
+                    fromOrder += stepCost((1 << t) - 1, t);
+                }
+                // Keep the FROM order unless another order is clearly cheaper.
+                if (cost[(1 << n) - 1] >= 0.9 * fromOrder)
+                    return null;
+                int[] order = new int[n];
+                for (int mask = (1 << n) - 1, i = n - 1; i >= 0; i--) {
+                    order[i] = last[mask];
+                    mask &= ~(1 << last[mask]);
+                }
+                return order;
             }
         }
 
         /**
-         * Computes the Cartesian product (cross join) of a list of record lists.
+         * Returns the position in keyColumns of an equality term on the primary key of the inner
+         * table whose outer column is the one the joined rows ascend on, or -1 if there is none.
          */
-        private List<Table.Record> cartesianProduct(List<List<Table.Record>> listOfRecordLists) {
-            List<Table.Record> result = new ArrayList<>();
-            if (listOfRecordLists.isEmpty()) {
-                result.add(new Table.Record(new ArrayList<>()));
-                return result;
+        private int mergeJoinTerm(Table inner, List<int[]> keyColumns, List<Table.Attribute> combinedSchema,
+                int innerOffset, int orderedBy) {
+            for (int k = 0; k < keyColumns.size(); k++) {
+                int[] cols = keyColumns.get(k);
+                if (cols[0] == orderedBy && cols[1] == inner.getPrimaryKeyIndex()
+                        && sameOrder(combinedSchema.get(cols[0]), combinedSchema.get(innerOffset + cols[1])))
+                    return k;
             }
-            cartesianProductHelper(listOfRecordLists, 0, new ArrayList<>(), result);
-            return result;
+            return -1;
         }
 
-        private void cartesianProductHelper(List<List<Table.Record>> listOfRecordLists, int index, List<Object> current,
-                List<Table.Record> result) {
-            if (index == listOfRecordLists.size()) {
-                result.add(new Table.Record(new ArrayList<>(current)));
-                return;
+        /**
+         * Joins the inner table to the plan on the pending terms that bound one of its columns with
+         * <, <=, > or >= by columns already joined, as a merge band join; preferring its primary key,
+         * and taking at most one lower and one upper bound. Falls back to a nested-loop cross
+         * product if there is no such term. The inner rows are those satisfying local, the terms
+         * on the inner table alone, estimated at innerRows.
+         */
+        private Operator bandJoin(Operator plan, Table inner, Table.Condition local, List<Table.Condition> pending,
+                List<Table.Attribute> combinedSchema, int width, int orderedBy, JoinEstimate estimate, double outerRows,
+                double innerRows) {
+            int tableWidth = inner.getAttributes().size();
+            List<Table.Condition> terms = new ArrayList<>();
+            List<int[]> bounds = new ArrayList<>(); // {inner position, outer position, 1 if lower bound, 1 if inclusive}
+            int column = -1;
+            for (Table.Condition term : pending) {
+                int[] cols = Table.inequalityColumns(term);
+                if (cols == null)
+                    continue;
+                String op = Table.comparisonOperator(term);
+                int innerCol, outerCol;
+                if (cols[0] >= width && cols[0] < width + tableWidth && cols[1] < width) {
+                    innerCol = cols[0] - width;
+                    outerCol = cols[1];
+                } else if (cols[1] >= width && cols[1] < width + tableWidth && cols[0] < width) {
+                    // Read "outer < inner" as "inner > outer".
+                    innerCol = cols[1] - width;
+                    outerCol = cols[0];
+                    op = op.startsWith("<") ? op.replace('<', '>') : op.replace('>', '<');
+                } else {
+                    continue;
+                }
+                if (!sameOrder(combinedSchema.get(outerCol), combinedSchema.get(width + innerCol)))
+                    continue;
+                if (column < 0 || (innerCol == inner.getPrimaryKeyIndex() && column != innerCol))
+                    column = innerCol;
+                terms.add(term);
+                bounds.add(new int[] { innerCol, outerCol, op.startsWith(">") ? 1 : 0, op.endsWith("=") ? 1 : 0 });
+            }
+            int[] low = null, high = null;
+            List<Table.Condition> used = new ArrayList<>();
+            for (int k = 0; k < bounds.size(); k++) {
+                int[] bound = bounds.get(k);
+                if (bound[0] != column)
+                    continue;
+                if (bound[2] == 1 && low == null) {
+                    low = bound;
+                } else if (bound[2] == 0 && high == null) {
+                    high = bound;
+                } else {
+                    continue;
+                }
+                pending.remove(terms.get(k));
+                used.add(terms.get(k));
+            }
+            double rows = outerRows * innerRows;
+            if (column < 0) {
+                // The inner table is read once per outer row.
+                Operator scan = scan(inner, local, outerRows);
+                return node(new Operator.NestedLoopJoin(plan, scan),
+                        "Nested loop join with " + inner.getName() + " (cross product)", rows, plan, scan);
+            }
+            for (Table.Condition term : used) {
+                rows *= estimate.selectivity(term);
+            }
+            Operator scan = scan(inner, local, 1);
+            return node(new Operator.MergeJoin(plan, scan, column, low == null ? -1 : low[1], low != null && low[3] == 1,
+                    high == null ? -1 : high[1], high != null && high[3] == 1, low != null && low[1] == orderedBy,
+                    column == inner.getPrimaryKeyIndex() && inner.scansInKeyOrder(local)),
+                    "Merge band join with " + inner.getName() + " on " + Table.allOf(used), rows, plan, scan);
+        }
+
+        /**
+         * Whether values of the two attributes are ordered alike: both text or both numeric.
+         */
+        private boolean sameOrder(Table.Attribute a, Table.Attribute b) {
+            return (a.getDataType() == Table.Attribute.DataType.TEXT) == (b.getDataType() == Table.Attribute.DataType.TEXT);
+        }
+
+        /**
+         * Returns the position in keyColumns of an equality term on an indexed column of the inner
+         * table (its primary key if possible) whose outer column has the same type, or -1 if no
+         * index can answer the join.
+         */
+        private int indexJoinTerm(Table inner, List<int[]> keyColumns, List<Table.Attribute> combinedSchema,
+                int innerOffset) {
+            int found = -1;
+            for (int k = 0; k < keyColumns.size(); k++) {
+                int[] cols = keyColumns.get(k);
+                if (inner.hasIndex(cols[1]) && combinedSchema.get(cols[0]).getDataType() == combinedSchema
+                        .get(innerOffset + cols[1]).getDataType()) {
+                    if (cols[1] == inner.getPrimaryKeyIndex())
+                        return k;
+                    if (found < 0)
+                        found = k;
+                }
+            }
+            return found;
+        }
+
+        /**
+         * Removes and returns every pending condition whose columns all fall within the first
+         * width columns.
+         */
+        private List<Table.Condition> takeAvailableConditions(List<Table.Condition> pending, int width) {
+            List<Table.Condition> ready = new ArrayList<>();
+            java.util.Iterator<Table.Condition> it = pending.iterator();
+            while (it.hasNext()) {
+                Table.Condition c = it.next();
+                if (Table.maxColumn(c) < width) {
+                    ready.add(c);
+                    it.remove();
+                }
             }
-            for (Table.Record rec : listOfRecordLists.get(index)) {
-                int initialSize = current.size();
-                current.addAll(rec.getValues());
-                cartesianProductHelper(listOfRecordLists, index + 1, current, result);
-                while (current.size() > initialSize) {
-                    current.remove(current.size() - 1);
+            return ready;
+        }
+
+        /**
+         * Removes from pending and returns the conditions on the columns of the table at
+         * positions width to width + tableWidth - 1 alone.
+         */
+        private List<Table.Condition> takeTableConditions(List<Table.Condition> pending, int width, int tableWidth) {
+            List<Table.Condition> own = new ArrayList<>();
+            java.util.Iterator<Table.Condition> it = pending.iterator();
+            while (it.hasNext()) {
+                Table.Condition c = it.next();
+                if (Table.columns(c).nextSetBit(0) >= width && Table.maxColumn(c) < width + tableWidth) {
+                    own.add(c);
+                    it.remove();
                 }
             }
+            return own;
         }
 
         /**
-         * Evaluates a condition on a joined record given the combined schema.
-         * For simplicity, this uses the same condition parser from Table.
+         * Compiles the WHERE condition against the combined schema of a join.
+         * Returns null (after reporting the problem) if the condition cannot be parsed.
          */
-        private boolean evaluateConditionOnJoinedRecord(Table.Record record, List<Table.Attribute> combinedSchema,
-                String conditionStr) {
+        private Table.Condition compileJoinCondition(List<Table.Attribute> combinedSchema) {
             try {
-                // Use the existing parseCondition method from the Table instance.
-                // For this evaluation, we pass the combinedSchema in place of Table's own
-                // schema.
-                Table.Condition condition = Table.parseCondition(conditionStr, combinedSchema);
-                return condition.evaluate(record, combinedSchema);
+                return Table.compileCondition(condition, combinedSchema);
             } catch (Exception e) {
                 System.out.println("Error evaluating condition on joined record: " + e.getMessage());
-                return false;
+                return null;
             }
         }
 
@@ -450,14 +1587,36 @@ public class CommandParser {
             selectCommand = new SelectCommand(input);
         }
 
+        @Override
+        public boolean modifiesState() {
+            return true;
+        }
+
         @Override
         public void execute(DBMS dbms) {
+            run(dbms, false, false);
+        }
+
+        /**
+         * Shows the plan of this statement with EXPLAIN: the plan of its SELECT under the node
+         * creating the table. With ANALYZE the statement is run and the nodes show what they did.
+         */
+        void explain(DBMS dbms, boolean analyze) {
+            run(dbms, true, analyze);
+        }
+
+        private void run(DBMS dbms, boolean explain, boolean analyze) {
             if (dbms.getCurrentDatabase() == null) {
                 System.out.println("Error: No database selected.");
                 return;
             }
-            System.out.println("Executing LET command: storing result into table '"
-                    + newTableName + "' with key '" + keyAttribute + "'.");
+            if (selectCommand.groups()) {
+                System.out.println("Error: LET does not support GROUP BY or aggregate functions.");
+                return;
+            }
+            if (!explain || analyze)
+                System.out.println("Executing LET command: storing result into table '"
+                        + newTableName + "' with key '" + keyAttribute + "'.");
 
             // Reference for the tables the select command referenced
             List<String> tableNames = selectCommand.tableNames;
@@ -491,30 +1650,12 @@ public class CommandParser {
                 }
             }
 
-            List<List<Table.Record>> listOfRecordLists = new ArrayList<>();
-
-            // For each table in the source, add to the list of record lists
-            for (Table table : sourceTables) {
-                listOfRecordLists.add(table.getRecords());
-            }
-
-            // Joining the records
-            List<Table.Record> joinedRecords = selectCommand.cartesianProduct(listOfRecordLists);
-
-            List<Table.Record> selectedRecords = new ArrayList<>();
-
             // Apply WHERE condition if it exists
+            Table.Condition compiled = null;
             if (!selectCommand.condition.isEmpty()) {
-                // For each record in joined records
-                for (Table.Record rec : joinedRecords) {
-                    // If it follows the condition, add it to selected records
-                    if (selectCommand.evaluateConditionOnJoinedRecord(rec, combinedSchema, selectCommand.condition)) {
-                        selectedRecords.add(rec);
-                    }
-                }
-            } else {
-                // All records are selected
-                selectedRecords = joinedRecords;
+                compiled = selectCommand.compileJoinCondition(combinedSchema);
+                if (compiled == null)
+                    return;
             }
 
             // Build the new schema using the selected columns
@@ -550,29 +1691,57 @@ public class CommandParser {
             // Create the new table
             Table newTable = new Table(newTableName, newAttrs);
 
-            // Loop through each record matching the select query
-            for (Table.Record oldRecord : selectedRecords) {
-                java.util.List<Object> targetValues = new java.util.ArrayList<>(); // Values we want to keep
-                java.util.List<Object> oldValues = oldRecord.getValues(); // full list of values from original record
-
-                // For each column in select statement
-                for (String col : selectCommand.columns) {
-                    int idx = selectCommand.findIndexInCombinedSchema(combinedSchema, col);
-                    if (idx != -1 && idx < oldValues.size()) {
-                        // Add it to target
-                        targetValues.add(oldValues.get(idx));
-                    } else {
-                        targetValues.add(null);
-                    }
-                }
+            // Values we want to keep: for each column in select statement, its position in the joined row
+            int[] projection = new int[selectCommand.columns.size()];
+            for (int i = 0; i < projection.length; i++) {
+                projection[i] = selectCommand.findIndexInCombinedSchema(combinedSchema, selectCommand.columns.get(i));
+            }
+            selectCommand.orderColumns = null;
+            if (!selectCommand.orderBy.isEmpty()) {
+                selectCommand.orderColumns = selectCommand.order(combinedSchema, projection);
+                if (selectCommand.orderColumns == null)
+                    return;
+            }
 
-                // Insert the values
-                newTable.insert(new Table.Record(targetValues));
+            // Collect each record matching the select query and load them into the new table at
+            // once, so its index is built from the sorted keys instead of by one insert per row.
+            selectCommand.explain = explain;
+            selectCommand.analyze = analyze;
+            Operator plan;
+            try {
+                plan = selectCommand.buildPlan(sourceTables, combinedSchema, compiled, projection);
+            } finally {
+                selectCommand.explain = false;
             }
+            Operator.Profile statement = null;
+            if (explain) {
+                statement = new Operator.Profile(null, "Create table " + newTableName,
+                        ((Operator.Profile) plan).getEstimatedRows(), analyze, plan);
+                if (!analyze) {
+                    statement.print("");
+                    return;
+                }
+            }
+            long start = System.nanoTime(), allocated = Operator.Profile.allocatedBytes();
+            List<Table.Record> rows = new ArrayList<>();
+            plan.open();
+            try {
+                Table.Record row;
+                while ((row = plan.next()) != null) {
+                    rows.add(row);
+                }
+            } finally {
+                plan.close();
+            }
+            int inserted = newTable.insertAll(rows);
             // Add the table to the database
             dbms.getCurrentDatabase().addTable(newTableName, newTable);
             System.out.println("LET: Table '" + newTableName + "' created with " +
                     newTable.getRecords().size() + " record(s).");
+            if (statement != null) {
+                statement.record(inserted, System.nanoTime() - start, Operator.Profile.allocatedBytes() - allocated);
+                statement.print("");
+            }
         }
     }
 
@@ -599,6 +1768,11 @@ public class CommandParser {
             }
         }
 
+        @Override
+        public boolean modifiesState() {
+            return true;
+        }
+
         @Override
         public void execute(DBMS dbms) {
             if (dbms.getCurrentDatabase() == null) {
@@ -647,6 +1821,11 @@ public class CommandParser {
             }
         }
 
+        @Override
+        public boolean modifiesState() {
+            return true;
+        }
+
         @Override
         public void execute(DBMS dbms) {
             if (dbms.getCurrentDatabase() == null) {
@@ -695,8 +1874,26 @@ public class CommandParser {
             }
         }
 
+        @Override
+        public boolean modifiesState() {
+            return true;
+        }
+
         @Override
         public void execute(DBMS dbms) {
+            if (dbms.getCurrentDatabase() == null) {
+                System.out.println("Error: No database selected.");
+                return;
+            }
+            Table table = dbms.getCurrentDatabase().getTable(tableName);
+            if (table != null)
+                update(table);
+        }
+
+        /**
+         * Shows the plan of this statement with EXPLAIN; with ANALYZE the update is made.
+         */
+        void explain(DBMS dbms, boolean analyze) {
             if (dbms.getCurrentDatabase() == null) {
                 System.out.println("Error: No database selected.");
                 return;
@@ -704,23 +1901,30 @@ public class CommandParser {
             Table table = dbms.getCurrentDatabase().getTable(tableName);
             if (table == null)
                 return;
-            int updatedCount = 0;
-            for (Table.Record record : table.getRecords()) {
-                if (condition.isEmpty() || table.matchesCondition(record, condition)) {
-                    java.util.List<Table.Attribute> attrs = table.getAttributes();
-                    java.util.List<Object> vals = record.getValues();
-                    for (String attrName : updates.keySet()) {
-                        for (int i = 0; i < attrs.size(); i++) {
-                            if (attrs.get(i).getName().equalsIgnoreCase(attrName)) {
-                                vals.set(i, updates.get(attrName));
-                                break;
-                            }
-                        }
+            Operator.Profile plan = ExplainCommand.modificationPlan("Update " + tableName, table, condition, analyze);
+            if (plan == null)
+                return;
+            if (analyze) {
+                long start = System.nanoTime(), allocated = Operator.Profile.allocatedBytes();
+                int updated = update(table);
+                plan.record(updated, System.nanoTime() - start, Operator.Profile.allocatedBytes() - allocated);
+            }
+            plan.print("");
+        }
+
+        private int update(Table table) {
+            // New values by attribute position; null leaves an attribute unchanged.
+            java.util.List<Table.Attribute> attrs = table.getAttributes();
+            java.util.List<Object> vals = new java.util.ArrayList<>(java.util.Collections.nCopies(attrs.size(), null));
+            for (String attrName : updates.keySet()) {
+                for (int i = 0; i < attrs.size(); i++) {
+                    if (attrs.get(i).getName().equalsIgnoreCase(attrName)) {
+                        vals.set(i, updates.get(attrName));
+                        break;
                     }
-                    updatedCount++;
                 }
             }
-            System.out.println(updatedCount + " record(s) updated in table '" + tableName + "'.");
+            return table.update(condition, new Table.Record(vals));
         }
     }
 
@@ -744,6 +1948,11 @@ public class CommandParser {
             }
         }
 
+        @Override
+        public boolean modifiesState() {
+            return true;
+        }
+
         @Override
         public void execute(DBMS dbms) {
             if (dbms.getCurrentDatabase() == null) {
@@ -753,26 +1962,44 @@ public class CommandParser {
             Table table = dbms.getCurrentDatabase().getTable(tableName);
             if (table == null)
                 return;
-            int deletedCount = 0;
-            java.util.Iterator<Table.Record> iter = table.getRecords().iterator();
 
+            delete(dbms, table);
+        }
+
+        /**
+         * Shows the plan of this statement with EXPLAIN; with ANALYZE the delete is made.
+         */
+        void explain(DBMS dbms, boolean analyze) {
+            if (dbms.getCurrentDatabase() == null) {
+                System.out.println("Error: No database selected.");
+                return;
+            }
+            Table table = dbms.getCurrentDatabase().getTable(tableName);
+            if (table == null)
+                return;
+            Operator.Profile plan = condition.isEmpty()
+                    ? new Operator.Profile(null, "Delete table " + tableName, table.getRowCount(), analyze)
+                    : ExplainCommand.modificationPlan("Delete from " + tableName, table, condition, analyze);
+            if (plan == null)
+                return;
+            if (analyze) {
+                long start = System.nanoTime(), allocated = Operator.Profile.allocatedBytes();
+                int deleted = delete(dbms, table);
+                plan.record(deleted, System.nanoTime() - start, Operator.Profile.allocatedBytes() - allocated);
+            }
+            plan.print("");
+        }
+
+        private int delete(DBMS dbms, Table table) {
             // No WHERE clause -> delete entire table and contents
             if (condition.isEmpty()) {
+                int rows = table.getRowCount();
                 dbms.getCurrentDatabase().deleteTable(tableName);
                 System.out.println("Table '" + tableName + "' and all its records were deleted.");
-                return;
-            }
-            // Remove tuples according to WHERE clause
-            while (iter.hasNext()) {
-                Table.Record record = iter.next();
-
-                // Removes record if it meets the condition
-                if (table.matchesCondition(record, condition)) {
-                    iter.remove();
-                    deletedCount++;
-                }
+                return rows;
             }
-            System.out.println(deletedCount + " record(s) deleted from table '" + tableName + "'.");
+            // Remove tuples according to WHERE clause, keeping the primary-key index in step.
+            return table.delete(condition);
         }
 
     }
@@ -806,8 +2033,7 @@ public class CommandParser {
             StringBuilder outBuilder = new StringBuilder();
             for (String cmdStr : commands) {
                 try {
-                    DBMS.Command cmd = CommandParser.parse(cmdStr);
-                    cmd.execute(dbms);
+                    dbms.execute(cmdStr);
                     outBuilder.append("Executed: ").append(cmdStr).append("\n");
                 } catch (Exception e) {
                     outBuilder.append("Error executing command: ").append(cmdStr)
@@ -824,8 +2050,11 @@ public class CommandParser {
     public static class ExitCommand implements DBMS.Command {
         @Override
         public void execute(DBMS dbms) {
-            dbms.saveState();
-            System.out.println("Exiting DBMS. State has been saved.");
+            if (dbms.saveState()) {
+                System.out.println("Exiting DBMS. State has been saved.");
+            } else {
+                System.out.println("Exiting DBMS. State has not been saved.");
+            }
             System.exit(0);
         }
     }
@@ -894,7 +2123,7 @@ public class CommandParser {
                     System.out.println("Error: Table '" + tableName + "' does not exist.");
                     return;
                 }
-                java.util.List<Table.Record> recs = table.getRecords();
+                java.util.List<Table.Record> recs = table.readRecords();
                 if (recs.isEmpty()) {
                     System.out.println("Table '" + tableName + "' is empty.");
                 } else {
@@ -910,7 +2139,7 @@ public class CommandParser {
                     for (Table.Record r : recs) {
                         System.out.print(count + ".\t");
                         for (Object val : r.getValues()) {
-                            System.out.print(val + "\t");
+                            System.out.print(Table.formatValue(val) + "\t");
                         }
                         System.out.println();
                         count++;
@@ -0,0 +1,396 @@
+import java.util.Arrays;
+
+/**
+ * A compressed set of row numbers in the style of Roaring bitmaps.
+ * Rows are grouped into chunks of 65536 by their upper 16 bits. A chunk holding at most 4096
+ * rows keeps them as a sorted array of their lower 16 bits (2 bytes per row); a fuller chunk
+ * keeps a plain 8 KB bitmap. Sparse and dense sets thus both stay small, and set operations on
+ * dense chunks run on 64 rows per machine word.
+ */
+public class CompressedBitmap {
+    private static final int ARRAY_LIMIT = 4096;   // Most rows an array chunk holds.
+    private static final int CHUNK_WORDS = 1024;   // 65536 bits.
+
+    private char[] keys = new char[0];             // Upper 16 bits of each chunk, ascending.
+    private Object[] chunks = new Object[0];       // Per key: char[] (sorted rows) or long[] (bits).
+    private int[] counts = new int[0];             // Per key: number of rows in the chunk.
+    private int size;                              // Number of chunks in use.
+
+    public CompressedBitmap() {
+    }
+
+    /**
+     * Returns a bitmap holding the rows from 0 to end - 1.
+     */
+    public static CompressedBitmap range(int end) {
+        CompressedBitmap result = new CompressedBitmap();
+        for (int start = 0; start < end; start += 1 << 16) {
+            int rows = Math.min(1 << 16, end - start);
+            long[] words = new long[CHUNK_WORDS];
+            Arrays.fill(words, 0, rows >>> 6, -1L);
+            if ((rows & 63) != 0) {
+                words[rows >>> 6] = (1L << rows) - 1;
+            }
+            result.append((char) (start >>> 16), normalize(words, rows), rows);
+        }
+        return result;
+    }
+
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += counts[i];
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int chunkIndex(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    public boolean contains(int row) {
+        int i = chunkIndex((char) (row >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) row;
+        Object chunk = chunks[i];
+        if (chunk instanceof long[]) {
+            return (((long[]) chunk)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) chunk, 0, counts[i], low) >= 0;
+    }
+
+    public void add(int row) {
+        char key = (char) (row >>> 16);
+        char low = (char) row;
+        int i = chunkIndex(key);
+        if (i < 0) {
+            i = -i - 1;
+            insertChunk(i, key, new char[] { low }, 1);
+            return;
+        }
+        Object chunk = chunks[i];
+        if (chunk instanceof long[]) {
+            long[] words = (long[]) chunk;
+            if ((words[low >>> 6] & (1L << low)) == 0) {
+                words[low >>> 6] |= 1L << low;
+                counts[i]++;
+            }
+            return;
+        }
+        char[] rows = (char[]) chunk;
+        int count = counts[i];
+        int pos = Arrays.binarySearch(rows, 0, count, low);
+        if (pos >= 0) {
+            return;
+        }
+        pos = -pos - 1;
+        if (count == ARRAY_LIMIT) {
+            long[] words = toWords(rows, count);
+            words[low >>> 6] |= 1L << low;
+            chunks[i] = words;
+        } else {
+            if (count == rows.length) {
+                rows = Arrays.copyOf(rows, Math.min(ARRAY_LIMIT, count * 2));
+                chunks[i] = rows;
+            }
+            System.arraycopy(rows, pos, rows, pos + 1, count - pos);
+            rows[pos] = low;
+        }
+        counts[i]++;
+    }
+
+    public void remove(int row) {
+        int i = chunkIndex((char) (row >>> 16));
+        if (i < 0) {
+            return;
+        }
+        char low = (char) row;
+        Object chunk = chunks[i];
+        int count = counts[i];
+        if (chunk instanceof long[]) {
+            long[] words = (long[]) chunk;
+            if ((words[low >>> 6] & (1L << low)) == 0) {
+                return;
+            }
+            words[low >>> 6] &= ~(1L << low);
+            count--;
+            chunks[i] = normalize(words, count);
+        } else {
+            char[] rows = (char[]) chunk;
+            int pos = Arrays.binarySearch(rows, 0, count, low);
+            if (pos < 0) {
+                return;
+            }
+            System.arraycopy(rows, pos + 1, rows, pos, count - pos - 1);
+            count--;
+        }
+        if (count == 0) {
+            removeChunk(i);
+        } else {
+            counts[i] = count;
+        }
+    }
+
+    /**
+     * Returns the first row at or after the given one, or -1 if there is none.
+     */
+    public int nextSetBit(int from) {
+        if (from < 0) {
+            from = 0;
+        }
+        int i = chunkIndex((char) (from >>> 16));
+        int low = from & 0xFFFF;
+        if (i < 0) {
+            i = -i - 1;
+            low = 0;
+        }
+        for (; i < size; i++, low = 0) {
+            int base = keys[i] << 16;
+            Object chunk = chunks[i];
+            if (chunk instanceof long[]) {
+                long[] words = (long[]) chunk;
+                int w = low >>> 6;
+                long word = words[w] & (-1L << low);
+                while (true) {
+                    if (word != 0) {
+                        return base + (w << 6) + Long.numberOfTrailingZeros(word);
+                    }
+                    if (++w == CHUNK_WORDS) {
+                        break;
+                    }
+                    word = words[w];
+                }
+            } else {
+                char[] rows = (char[]) chunk;
+                int pos = Arrays.binarySearch(rows, 0, counts[i], (char) low);
+                if (pos < 0) {
+                    pos = -pos - 1;
+                }
+                if (pos < counts[i]) {
+                    return base + rows[pos];
+                }
+            }
+        }
+        return -1;
+    }
+
+    // -------------------- Set Operations --------------------
+
+    public static CompressedBitmap and(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0, j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                Object chunk = a.chunks[i], other = b.chunks[j];
+                if (chunk instanceof char[] && other instanceof char[]) {
+                    char[] rows = new char[Math.min(a.counts[i], b.counts[j])];
+                    int count = 0, x = 0, y = 0;
+                    char[] left = (char[]) chunk, right = (char[]) other;
+                    while (x < a.counts[i] && y < b.counts[j]) {
+                        if (left[x] < right[y]) {
+                            x++;
+                        } else if (left[x] > right[y]) {
+                            y++;
+                        } else {
+                            rows[count++] = left[x];
+                            x++;
+                            y++;
+                        }
+                    }
+                    result.append(a.keys[i], rows, count);
+                } else if (chunk instanceof char[] || other instanceof char[]) {
+                    // Probe the bits with each row of the array.
+                    boolean leftArray = chunk instanceof char[];
+                    char[] array = (char[]) (leftArray ? chunk : other);
+                    long[] words = (long[]) (leftArray ? other : chunk);
+                    int arrayCount = leftArray ? a.counts[i] : b.counts[j];
+                    char[] rows = new char[arrayCount];
+                    int count = 0;
+                    for (int x = 0; x < arrayCount; x++) {
+                        if ((words[array[x] >>> 6] & (1L << array[x])) != 0) {
+                            rows[count++] = array[x];
+                        }
+                    }
+                    result.append(a.keys[i], rows, count);
+                } else {
+                    long[] left = (long[]) chunk, right = (long[]) other;
+                    long[] words = new long[CHUNK_WORDS];
+                    int count = 0;
+                    for (int w = 0; w < CHUNK_WORDS; w++) {
+                        words[w] = left[w] & right[w];
+                        count += Long.bitCount(words[w]);
+                    }
+                    result.append(a.keys[i], normalize(words, count), count);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public static CompressedBitmap or(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0, j = 0;
+        while (i < a.size || j < b.size) {
+            if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                result.append(a.keys[i], copy(a.chunks[i], a.counts[i]), a.counts[i]);
+                i++;
+            } else if (i == a.size || a.keys[i] > b.keys[j]) {
+                result.append(b.keys[j], copy(b.chunks[j], b.counts[j]), b.counts[j]);
+                j++;
+            } else {
+                long[] words = words(a.chunks[i], a.counts[i]);
+                long[] other = b.chunks[j] instanceof long[] ? (long[]) b.chunks[j] : null;
+                int count = 0;
+                if (other != null) {
+                    for (int w = 0; w < CHUNK_WORDS; w++) {
+                        words[w] |= other[w];
+                        count += Long.bitCount(words[w]);
+                    }
+                } else {
+                    char[] rows = (char[]) b.chunks[j];
+                    for (int x = 0; x < b.counts[j]; x++) {
+                        words[rows[x] >>> 6] |= 1L << rows[x];
+                    }
+                    for (int w = 0; w < CHUNK_WORDS; w++) {
+                        count += Long.bitCount(words[w]);
+                    }
+                }
+                result.append(a.keys[i], normalize(words, count), count);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the rows of a that are not in b.
+     */
+    public static CompressedBitmap andNot(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+        for (int i = 0; i < a.size; i++) {
+            while (j < b.size && b.keys[j] < a.keys[i]) {
+                j++;
+            }
+            if (j == b.size || b.keys[j] != a.keys[i]) {
+                result.append(a.keys[i], copy(a.chunks[i], a.counts[i]), a.counts[i]);
+                continue;
+            }
+            Object other = b.chunks[j];
+            if (a.chunks[i] instanceof char[]) {
+                char[] array = (char[]) a.chunks[i];
+                char[] rows = new char[a.counts[i]];
+                int count = 0;
+                for (int x = 0; x < a.counts[i]; x++) {
+                    boolean removed = other instanceof long[]
+                            ? (((long[]) other)[array[x] >>> 6] & (1L << array[x])) != 0
+                            : Arrays.binarySearch((char[]) other, 0, b.counts[j], array[x]) >= 0;
+                    if (!removed) {
+                        rows[count++] = array[x];
+                    }
+                }
+                result.append(a.keys[i], rows, count);
+            } else {
+                long[] words = words(a.chunks[i], a.counts[i]);
+                long[] removed = words(other, b.counts[j]);
+                int count = 0;
+                for (int w = 0; w < CHUNK_WORDS; w++) {
+                    words[w] &= ~removed[w];
+                    count += Long.bitCount(words[w]);
+                }
+                result.append(a.keys[i], normalize(words, count), count);
+            }
+        }
+        return result;
+    }
+
+    // -------------------- Chunk Helpers --------------------
+
+    /**
+     * Adds a chunk after the existing ones; empty chunks are dropped.
+     */
+    private void append(char key, Object chunk, int count) {
+        if (count == 0) {
+            return;
+        }
+        insertChunk(size, key, chunk, count);
+    }
+
+    private void insertChunk(int i, char key, Object chunk, int count) {
+        if (size == keys.length) {
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            chunks = Arrays.copyOf(chunks, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(chunks, i, chunks, i + 1, size - i);
+        System.arraycopy(counts, i, counts, i + 1, size - i);
+        keys[i] = key;
+        chunks[i] = chunk;
+        counts[i] = count;
+        size++;
+    }
+
+    private void removeChunk(int i) {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(chunks, i + 1, chunks, i, size - i - 1);
+        System.arraycopy(counts, i + 1, counts, i, size - i - 1);
+        size--;
+        chunks[size] = null;
+    }
+
+    /**
+     * Returns the chunk as bits, in a new array.
+     */
+    private static long[] words(Object chunk, int count) {
+        if (chunk instanceof long[]) {
+            return ((long[]) chunk).clone();
+        }
+        return toWords((char[]) chunk, count);
+    }
+
+    private static long[] toWords(char[] rows, int count) {
+        long[] words = new long[CHUNK_WORDS];
+        for (int x = 0; x < count; x++) {
+            words[rows[x] >>> 6] |= 1L << rows[x];
+        }
+        return words;
+    }
+
+    private static Object copy(Object chunk, int count) {
+        return chunk instanceof long[] ? ((long[]) chunk).clone() : Arrays.copyOf((char[]) chunk, count);
+    }
+
+    /**
+     * Returns the bits as a sorted array if there are few enough of them.
+     */
+    private static Object normalize(long[] words, int count) {
+        if (count > ARRAY_LIMIT) {
+            return words;
+        }
+        char[] rows = new char[count];
+        int n = 0;
+        for (int w = 0; w < CHUNK_WORDS && n < count; w++) {
+            long word = words[w];
+            while (word != 0) {
+                rows[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return rows;
+    }
+}
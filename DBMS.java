@@ -1,4 +1,5 @@
 import java.io.*;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -12,7 +13,33 @@ public class DBMS implements Serializable {
     // Reference to the current active database.
     private Database currentDatabase;
     
+    // Single-file state written by earlier versions; read once and replaced by dataDirectory.
     private String persistenceFile = "dbms_state.ser";
+
+    // Directory holding the catalog and one file per table.
+    private String dataDirectory = "dbms_data";
+
+    private String logFile = "dbms_wal.log";
+
+    // Number of logged commands after which the state is checkpointed and the log truncated.
+    private static final int CHECKPOINT_INTERVAL = 1000;
+
+    // Sequence number of the last logged command reflected in the saved state.
+    private long checkpointLsn;
+
+    private transient WriteAheadLog wal;
+
+    private transient int commandsSinceCheckpoint;
+
+    // Saved state that exists but failed to load; checkpoints would overwrite it, so none are
+    // taken while it is set.
+    private transient File unreadableState;
+
+    // Whether the state was loaded from persistenceFile, which the next checkpoint replaces.
+    private transient boolean migrating;
+
+    // Stack size of the thread reading Java-serialized state.
+    private static final long LEGACY_READER_STACK = 1L << 30;
     
     /**
      * Constructor – initializes an empty DBMS and loads persisted state if available.
@@ -23,34 +50,202 @@ public class DBMS implements Serializable {
     }
     
     /**
-     * Loads saved state from the persistence file.
+     * Loads the saved catalog, then replays the commands logged since that state was saved.
+     * Table data is not read here; each table is loaded on first access.
      */
     public void initialize() {
+        File directory = new File(dataDirectory);
         File file = new File(persistenceFile);
-        if (file.exists()) {
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                DBMS state = (DBMS) ois.readObject();
+        if (StateFile.hasCatalog(directory)) {
+            try {
+                StateFile.Snapshot state = StateFile.readCatalog(directory);
                 this.databases = state.getDatabases();
-                this.currentDatabase = state.getCurrentDatabase();
+                this.currentDatabase = state.getCurrentDatabase() == null ? null
+                        : databases.get(state.getCurrentDatabase());
+                this.checkpointLsn = state.getCheckpointLsn();
                 System.out.println("DBMS initialized. Persistent state loaded successfully.");
             } catch (Exception e) {
+                unreadableState = directory;
+                System.out.println("Failed to load persistent state: " + e.getMessage());
+            }
+        } else if (file.exists()) {
+            try {
+                if (StateFile.isStateFile(file)) {
+                    StateFile.Snapshot state = StateFile.read(file);
+                    this.databases = state.getDatabases();
+                    this.currentDatabase = state.getCurrentDatabase() == null ? null
+                            : databases.get(state.getCurrentDatabase());
+                    this.checkpointLsn = state.getCheckpointLsn();
+                } else {
+                    loadSerializedState(file);
+                }
+                migrating = true;
+                System.out.println("DBMS initialized. Persistent state loaded successfully.");
+            } catch (Exception e) {
+                unreadableState = file;
                 System.out.println("Failed to load persistent state: " + e.getMessage());
             }
         } else {
             System.out.println("No persistent state found. Starting with a clean DBMS.");
         }
+        try {
+            wal = new WriteAheadLog(logFile);
+            wal.advanceTo(checkpointLsn);
+            recover();
+        } catch (IOException e) {
+            wal = null;
+            System.out.println("Error opening write-ahead log: " + e.getMessage()
+                    + ". Changes will only be saved on EXIT.");
+        }
     }
-    
+
     /**
-     * Saves the current state to a file.
+     * Loads state saved by earlier versions with Java serialization; its tables are migrated
+     * (see Table.migrate) and it is rewritten in the data directory at the next checkpoint.
+     * Trees saved before the primary index was balanced can be as deep as they have keys and
+     * are read recursively, so the file is read on a thread with a large stack.
      */
-    public void saveState() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(persistenceFile))) {
-            oos.writeObject(this);
-            System.out.println("State saved successfully.");
+    private void loadSerializedState(File file) throws Exception {
+        java.util.concurrent.FutureTask<DBMS> read = new java.util.concurrent.FutureTask<>(() -> {
+            try (ObjectInputStream ois = new LegacyStateStream(new FileInputStream(file))) {
+                return (DBMS) ois.readObject();
+            }
+        });
+        Thread reader = new Thread(null, read, "legacy-state-reader", LEGACY_READER_STACK);
+        reader.start();
+        DBMS state;
+        try {
+            state = read.get();
+        } catch (java.util.concurrent.ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw new IOException("Cannot read " + file + ": " + e.getCause());
+        }
+        for (Database database : state.getDatabases().values()) {
+            for (Table table : database.getTables().values()) {
+                table.migrate();
+            }
+        }
+        this.databases = state.getDatabases();
+        this.currentDatabase = state.getCurrentDatabase();
+        this.checkpointLsn = state.checkpointLsn;
+    }
+
+    /**
+     * Reads Java-serialized state. Versions between the first balanced BinarySearchTree and the
+     * binary state format saved the tree under serialVersionUID 2, with the fields the tree has
+     * now, so those classes are read with their current descriptors.
+     */
+    private static class LegacyStateStream extends ObjectInputStream {
+        LegacyStateStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass descriptor = super.readClassDescriptor();
+            if (descriptor.getName().startsWith("BinarySearchTree") && descriptor.getSerialVersionUID() == 2L) {
+                return ObjectStreamClass.lookup(Class.forName(descriptor.getName()));
+            }
+            return descriptor;
+        }
+    }
+
+    /**
+     * Re-executes the logged commands newer than the last checkpoint. Their normal output is
+     * suppressed since it was already shown when they first ran.
+     */
+    private void recover() throws IOException {
+        int replayed = 0;
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (WriteAheadLog.Entry entry : wal.readEntries()) {
+                if (entry.getLsn() <= checkpointLsn) {
+                    continue;
+                }
+                try {
+                    CommandParser.parse(entry.getCommand()).execute(this);
+                } catch (Exception e) {
+                    // The command failed the same way when it was first run.
+                }
+                replayed++;
+            }
+        } finally {
+            System.setOut(console);
+        }
+        if (replayed > 0) {
+            commandsSinceCheckpoint = replayed;
+            System.out.println("Recovered " + replayed + " logged command(s) from " + logFile + ".");
+        }
+    }
+
+    /**
+     * Parses and executes a command. Commands that change state are appended to the
+     * write-ahead log before they run, so every change survives a crash without rewriting
+     * the whole state; the state itself is only saved at checkpoints.
+     */
+    public void execute(String commandText) throws Exception {
+        Command command = CommandParser.parse(commandText);
+        if (wal != null && command.modifiesState()) {
+            wal.append(commandText);
+            commandsSinceCheckpoint++;
+        }
+        command.execute(this);
+        if (commandsSinceCheckpoint >= CHECKPOINT_INTERVAL) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Saves the tables changed since the last checkpoint together with a new catalog, and
+     * empties the log, whose entries the saved state now reflects. Nothing is saved while
+     * saved state that failed to load is still in place; the log keeps every command instead.
+     */
+    public boolean checkpoint() {
+        if (unreadableState != null) {
+            System.out.println("Error: State not saved, since it would replace " + unreadableState
+                    + ", which failed to load. Move it aside to start over; commands stay in " + logFile + ".");
+            commandsSinceCheckpoint = 0;
+            return false;
+        }
+        if (wal != null) {
+            checkpointLsn = wal.getLastLsn();
+        }
+        File directory = new File(dataDirectory);
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create directory " + directory);
+            }
+            StateFile.save(directory, databases, currentDatabase, checkpointLsn);
+            if (migrating) {
+                // The single-file state it was loaded from is superseded by the data directory.
+                Files.deleteIfExists(new File(persistenceFile).toPath());
+                migrating = false;
+            }
+            if (wal != null) {
+                wal.truncate();
+            }
         } catch (IOException e) {
             System.out.println("Error saving state: " + e.getMessage());
+            return false;
+        }
+        commandsSinceCheckpoint = 0;
+        return true;
+    }
+
+    /**
+     * Saves the current state to a file.
+     *
+     * @return Whether the state was saved.
+     */
+    public boolean saveState() {
+        if (checkpoint()) {
+            System.out.println("State saved successfully.");
+            return true;
         }
+        return false;
     }
     
     /**
@@ -109,5 +304,12 @@ public class DBMS implements Serializable {
      */
     public interface Command {
         void execute(DBMS dbms) throws Exception;
+
+        /**
+         * Whether the command changes the stored state and must therefore be logged.
+         */
+        default boolean modifiesState() {
+            return false;
+        }
     }
 }
@@ -24,8 +24,7 @@ public class DBMSApp {
                     String cmdText = allInput.substring(0, idx).trim();
                     if (!cmdText.isEmpty()) {
                         try {
-                            DBMS.Command cmd = CommandParser.parse(cmdText);
-                            cmd.execute(dbms);
+                            dbms.execute(cmdText);
                             if (cmdText.equalsIgnoreCase("EXIT")) {
                                 // Exit the application
                                 return;
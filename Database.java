@@ -1,5 +1,8 @@
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -10,9 +13,17 @@ public class Database implements Serializable {
     // Stores tables as Table objects.
     private Map<String, Table> tables;
     
+    // Saved tables by name: the file holding the latest saved version of each. Tables in this
+    // map but not in tables are read from disk on first access.
+    private Map<String, String> tableFiles;
+    
+    // Directory holding the table files.
+    private transient File directory;
+    
     public Database(String name) {
         this.name = name;
         this.tables = new HashMap<>();
+        this.tableFiles = new HashMap<>();
     }
     
     public String getName() {
@@ -20,7 +31,7 @@ public class Database implements Serializable {
     }
     
     public void addTable(String tableName, Table table) {
-        if (tables.containsKey(tableName)) {
+        if (tables.containsKey(tableName) || getTableFiles().containsKey(tableName)) {
             System.out.println("Error: Table '" + tableName + "' already exists in database '" + name + "'.");
         } else {
             tables.put(tableName, table);
@@ -31,30 +42,76 @@ public class Database implements Serializable {
     public Table getTable(String tableName) {
         if (tables.containsKey(tableName))
             return tables.get(tableName);
+        else if (getTableFiles().containsKey(tableName))
+            return loadTable(tableName);
         else {
             System.out.println("Error: Table '" + tableName + "' does not exist in database '" + name + "'.");
             return null;
         }
     }
     
+    /**
+     * Reads a saved table from its file and keeps it in memory from then on.
+     */
+    private Table loadTable(String tableName) {
+        try {
+            Table table = StateFile.readTable(new File(directory, tableFiles.get(tableName)));
+            tables.put(tableName, table);
+            return table;
+        } catch (IOException e) {
+            System.out.println("Error: Failed to load table '" + tableName + "': " + e.getMessage());
+            return null;
+        }
+    }
+    
     public void deleteTable(String tableName) {
-        if (tables.containsKey(tableName)) {
+        if (tables.containsKey(tableName) || getTableFiles().containsKey(tableName)) {
             tables.remove(tableName);
+            tableFiles.remove(tableName);
             System.out.println("Table '" + tableName + "' deleted from database '" + name + "'.");
         } else {
             System.out.println("Error: Table '" + tableName + "' does not exist in database '" + name + "'.");
         }
     }
     
+    // Getters for persistence.
+    public Map<String, Table> getTables() {
+        return tables;
+    }
+    
+    /**
+     * Returns the saved tables by name, mapped to the files holding them.
+     */
+    public Map<String, String> getTableFiles() {
+        if (tableFiles == null) {
+            // State saved by Java serialization predates table files.
+            tableFiles = new HashMap<>();
+        }
+        return tableFiles;
+    }
+    
+    public File getDirectory() {
+        return directory;
+    }
+    
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+    
+    /**
+     * Returns the names of all tables, whether or not they have been loaded yet.
+     */
     public Set<String> listTables() {
-        return tables.keySet();
+        Set<String> names = new LinkedHashSet<>(tables.keySet());
+        names.addAll(getTableFiles().keySet());
+        return names;
     }
     
     @Override
     public String toString() {
         return "Database{" +
                "name='" + name + '\'' +
-               ", tables=" + tables.keySet() +
+               ", tables=" + listTables() +
                '}';
     }
 }
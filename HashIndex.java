@@ -0,0 +1,197 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Open-addressing hash index from column values to the records holding them, for equality
+ * lookups only.
+ * Keys are probed linearly in a power-of-two table kept at most half full. INTEGER keys are kept
+ * in an int array, so they are neither boxed nor compared through equals(); other keys are kept
+ * as objects. A key held by one record stores that record directly, and only keys shared by
+ * several records get a list. Deletion moves later entries of the probe run back into the freed
+ * slot instead of leaving tombstones, so lookups never slow down as records come and go.
+ */
+public class HashIndex<R> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final boolean intKeys;
+    private int[] ints;       // Keys, when intKeys.
+    private Object[] keys;    // Keys, otherwise.
+    private Object[] values;  // A record, or Duplicates for a shared key; null marks a free slot.
+    private int size;         // Number of distinct keys.
+
+    /**
+     * The records of a key held by more than one record.
+     */
+    private static class Duplicates<R> extends ArrayList<R> {
+        private static final long serialVersionUID = 1L;
+
+        Duplicates(R first, R second) {
+            super(2);
+            add(first);
+            add(second);
+        }
+    }
+
+    /**
+     * @param intKeys Whether every key is an Integer, so keys can be stored as primitives.
+     */
+    public HashIndex(boolean intKeys) {
+        this.intKeys = intKeys;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        if (intKeys) {
+            ints = new int[capacity];
+        } else {
+            keys = new Object[capacity];
+        }
+        values = new Object[capacity];
+    }
+
+    /**
+     * Returns the number of distinct keys in the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    private static int hash(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int hashOf(Object key) {
+        return hash(intKeys ? (Integer) key : key.hashCode());
+    }
+
+    /**
+     * Returns the slot holding the key, or the free slot where it would go.
+     */
+    private int slotOf(Object key) {
+        int mask = values.length - 1;
+        int slot = hashOf(key) & mask;
+        if (intKeys) {
+            int k = (Integer) key;
+            while (values[slot] != null && ints[slot] != k) {
+                slot = (slot + 1) & mask;
+            }
+        } else {
+            while (values[slot] != null && !keys[slot].equals(key)) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the records holding the key, in the order they were added (empty if none).
+     */
+    @SuppressWarnings("unchecked")
+    public List<R> get(Object key) {
+        Object value = values[slotOf(key)];
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        return value instanceof Duplicates ? (List<R>) value : Collections.singletonList((R) value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void add(Object key, R record) {
+        int slot = slotOf(key);
+        Object value = values[slot];
+        if (value instanceof Duplicates) {
+            ((Duplicates<R>) value).add(record);
+            return;
+        }
+        if (value != null) {
+            values[slot] = new Duplicates<>((R) value, record);
+            return;
+        }
+        if (intKeys) {
+            ints[slot] = (Integer) key;
+        } else {
+            keys[slot] = key;
+        }
+        values[slot] = record;
+        if (++size * 2 > values.length) {
+            resize(values.length * 2);
+        }
+    }
+
+    /**
+     * Removes the given record (compared by identity) from the records holding the key.
+     */
+    @SuppressWarnings("unchecked")
+    public void remove(Object key, R record) {
+        int slot = slotOf(key);
+        Object value = values[slot];
+        if (value instanceof Duplicates) {
+            Duplicates<R> records = (Duplicates<R>) value;
+            for (int i = 0; i < records.size(); i++) {
+                if (records.get(i) == record) {
+                    records.remove(i);
+                    break;
+                }
+            }
+            if (records.size() == 1) {
+                values[slot] = records.get(0);
+            }
+        } else if (value == record) {
+            deleteSlot(slot);
+        }
+    }
+
+    /**
+     * Frees a slot, moving back the entries after it in the same probe run that could no longer
+     * be reached past the gap.
+     */
+    private void deleteSlot(int slot) {
+        int mask = values.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(intKeys ? ints[next] : keys[next].hashCode()) & mask;
+            // The entry may fill the gap unless its home lies cyclically in (gap, next].
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                values[gap] = values[next];
+                if (intKeys) {
+                    ints[gap] = ints[next];
+                } else {
+                    keys[gap] = keys[next];
+                }
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+        if (!intKeys) {
+            keys[gap] = null;
+        }
+        size--;
+    }
+
+    private void resize(int capacity) {
+        int[] oldInts = ints;
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) {
+                continue;
+            }
+            int slot = hash(intKeys ? oldInts[i] : oldKeys[i].hashCode()) & mask;
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            if (intKeys) {
+                ints[slot] = oldInts[i];
+            } else {
+                keys[slot] = oldKeys[i];
+            }
+            values[slot] = oldValues[i];
+        }
+    }
+}
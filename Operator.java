@@ -0,0 +1,1100 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pull-based (Volcano-style) query operator.
+ * Operators are composed into a tree; the consumer calls open() once, then next() until it
+ * returns null, then close(). Rows flow one at a time from the table scans at the leaves to the
+ * consumer, so memory is bounded by operator state (e.g. a hash join's build table) rather than
+ * by the size of intermediate results.
+ */
+public interface Operator {
+
+    void open();
+
+    /**
+     * Returns the next row, or null when the operator is exhausted.
+     */
+    Table.Record next();
+
+    void close();
+
+    // -------------------- Scans --------------------
+
+    /**
+     * Reads the records of a table. When given a condition, the table picks its access path
+     * from it (e.g. a primary-key range); the terms that path does not answer
+     * (Table.residual) are applied by a Filter.
+     */
+    class Scan implements Operator {
+        private final Table table;
+        private final Table.Condition accessCondition;
+        private Iterator<Table.Record> records;
+
+        public Scan(Table table, Table.Condition accessCondition) {
+            this.table = table;
+            this.accessCondition = accessCondition;
+        }
+
+        @Override
+        public void open() {
+            records = table.scan(accessCondition);
+        }
+
+        @Override
+        public Table.Record next() {
+            return records.hasNext() ? records.next() : null;
+        }
+
+        @Override
+        public void close() {
+            records = null;
+        }
+    }
+
+    // -------------------- Row-at-a-time Operators --------------------
+
+    /**
+     * Passes through the rows of its child that satisfy a compiled condition.
+     */
+    class Filter implements Operator {
+        private final Operator child;
+        private final Table.Condition condition;
+        private final List<Table.Attribute> schema;
+
+        public Filter(Operator child, Table.Condition condition, List<Table.Attribute> schema) {
+            this.child = child;
+            this.condition = condition;
+            this.schema = schema;
+        }
+
+        @Override
+        public void open() {
+            child.open();
+        }
+
+        @Override
+        public Table.Record next() {
+            Table.Record row;
+            while ((row = child.next()) != null) {
+                if (matches(row)) {
+                    return row;
+                }
+            }
+            return null;
+        }
+
+        private boolean matches(Table.Record row) {
+            try {
+                return condition.evaluate(row, schema);
+            } catch (Exception e) {
+                System.out.println("Error evaluating condition: " + e.getMessage());
+                return false;
+            }
+        }
+
+        @Override
+        public void close() {
+            child.close();
+        }
+    }
+
+    /**
+     * Keeps the given columns of each row, in order; a position of -1 produces NULL.
+     */
+    class Project implements Operator {
+        private final Operator child;
+        private final int[] columns;
+
+        public Project(Operator child, int[] columns) {
+            this.child = child;
+            this.columns = columns;
+        }
+
+        @Override
+        public void open() {
+            child.open();
+        }
+
+        @Override
+        public Table.Record next() {
+            Table.Record row = child.next();
+            if (row == null) {
+                return null;
+            }
+            List<Object> values = new ArrayList<>(columns.length);
+            for (int column : columns) {
+                values.add(column >= 0 && column < row.getValues().size() ? row.getValue(column) : null);
+            }
+            return new Table.Record(values);
+        }
+
+        @Override
+        public void close() {
+            child.close();
+        }
+    }
+
+    /**
+     * Stops after the first n rows of its child.
+     */
+    class Limit implements Operator {
+        private final Operator child;
+        private final int limit;
+        private int returned;
+
+        public Limit(Operator child, int limit) {
+            this.child = child;
+            this.limit = limit;
+        }
+
+        @Override
+        public void open() {
+            returned = 0;
+            child.open();
+        }
+
+        @Override
+        public Table.Record next() {
+            if (returned >= limit) {
+                return null;
+            }
+            Table.Record row = child.next();
+            if (row != null) {
+                returned++;
+            }
+            return row;
+        }
+
+        @Override
+        public void close() {
+            child.close();
+        }
+    }
+
+    // -------------------- Sorting --------------------
+
+    /**
+     * Returns the rows of its child ordered by some of their columns, each ascending or
+     * descending; NULL sorts first in ascending order. Rows with equal sort columns keep the
+     * order they arrived in. With a limit of at most MEMORY_ROWS rows, only that many rows are
+     * kept, in a bounded heap whose top is the last row kept so far. Otherwise up to MEMORY_ROWS
+     * rows are sorted in memory; a larger input is cut into sorted runs of that many rows written
+     * to temporary files, which are merged, at most MERGE_FAN_IN at a time, as rows are returned.
+     */
+    class Sort implements Operator {
+        // Most rows held in memory; set with the system property dbms.sortRows.
+        static final int MEMORY_ROWS = Integer.getInteger("dbms.sortRows", 100000);
+        private static final int MERGE_FAN_IN = 64;
+
+        private final Operator child;
+        private final int[] columns;
+        private final boolean[] descending;
+        private final int limit; // -1 for none.
+        private Iterator<Table.Record> sorted; // The rows, when they fit in memory.
+        private List<Run> runs; // The runs being merged, otherwise.
+        private java.util.PriorityQueue<Run> merging;
+
+        public Sort(Operator child, int[] columns, boolean[] descending, int limit) {
+            this.child = child;
+            this.columns = columns;
+            this.descending = descending;
+            this.limit = limit;
+        }
+
+        private int compare(Table.Record a, Table.Record b) {
+            for (int k = 0; k < columns.length; k++) {
+                Object x = a.getValue(columns[k]), y = b.getValue(columns[k]);
+                int cmp = x == null ? (y == null ? 0 : -1) : y == null ? 1 : Table.compareValues(x, y);
+                if (cmp != 0) {
+                    return descending[k] ? -cmp : cmp;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public void open() {
+            child.open();
+            if (limit >= 0 && limit <= MEMORY_ROWS) {
+                sorted = top(limit);
+                return;
+            }
+            List<Table.Record> buffer = new ArrayList<>();
+            runs = new ArrayList<>();
+            Table.Record row;
+            while ((row = child.next()) != null) {
+                buffer.add(row);
+                if (buffer.size() == MEMORY_ROWS) {
+                    buffer.sort(this::compare);
+                    runs.add(Run.write(buffer.iterator(), buffer.size()));
+                    buffer.clear();
+                }
+            }
+            buffer.sort(this::compare);
+            if (runs.isEmpty()) {
+                runs = null;
+                sorted = buffer.iterator();
+                return;
+            }
+            if (!buffer.isEmpty()) {
+                runs.add(Run.write(buffer.iterator(), buffer.size()));
+            }
+            buffer = null;
+            // Merge in passes until one pass can merge every run, keeping the runs in input order.
+            while (runs.size() > MERGE_FAN_IN) {
+                List<Run> merged = new ArrayList<>();
+                for (int from = 0; from < runs.size(); from += MERGE_FAN_IN) {
+                    List<Run> group = runs.subList(from, Math.min(from + MERGE_FAN_IN, runs.size()));
+                    long rows = 0;
+                    for (Run run : group) {
+                        rows += run.remaining;
+                    }
+                    startMerge(group);
+                    merged.add(Run.write(mergedRows(), rows));
+                    for (Run run : group) {
+                        run.close();
+                    }
+                }
+                runs = merged;
+            }
+            startMerge(runs);
+        }
+
+        /**
+         * Returns the first n rows of the child in order, keeping at most n rows at a time.
+         */
+        private Iterator<Table.Record> top(int n) {
+            // The heap's top is the row that would be dropped next: the last in order, and of
+            // equal rows the one that arrived last.
+            java.util.PriorityQueue<Object[]> heap = new java.util.PriorityQueue<>(Math.max(1, Math.min(n, 1024)),
+                    (a, b) -> {
+                        int cmp = compare((Table.Record) b[0], (Table.Record) a[0]);
+                        return cmp != 0 ? cmp : Long.compare((Long) b[1], (Long) a[1]);
+                    });
+            long arrived = 0;
+            Table.Record row;
+            while ((row = child.next()) != null) {
+                arrived++;
+                if (heap.size() < n) {
+                    heap.add(new Object[] { row, arrived });
+                } else if (n > 0 && compare(row, (Table.Record) heap.peek()[0]) < 0) {
+                    heap.poll();
+                    heap.add(new Object[] { row, arrived });
+                }
+            }
+            Table.Record[] rows = new Table.Record[heap.size()];
+            for (int i = rows.length - 1; i >= 0; i--) {
+                rows[i] = (Table.Record) heap.poll()[0];
+            }
+            return Arrays.asList(rows).iterator();
+        }
+
+        private void startMerge(List<Run> group) {
+            merging = new java.util.PriorityQueue<>(Math.max(1, group.size()), (a, b) -> {
+                int cmp = compare(a.current, b.current);
+                return cmp != 0 ? cmp : Integer.compare(a.index, b.index);
+            });
+            for (int i = 0; i < group.size(); i++) {
+                Run run = group.get(i);
+                run.index = i;
+                if (run.advance()) {
+                    merging.add(run);
+                }
+            }
+        }
+
+        private Iterator<Table.Record> mergedRows() {
+            return new Iterator<Table.Record>() {
+                @Override
+                public boolean hasNext() {
+                    return !merging.isEmpty();
+                }
+
+                @Override
+                public Table.Record next() {
+                    Run run = merging.poll();
+                    Table.Record row = run.current;
+                    if (run.advance()) {
+                        merging.add(run);
+                    }
+                    return row;
+                }
+            };
+        }
+
+        @Override
+        public Table.Record next() {
+            if (sorted != null) {
+                return sorted.hasNext() ? sorted.next() : null;
+            }
+            return merging != null && !merging.isEmpty() ? mergedRows().next() : null;
+        }
+
+        @Override
+        public void close() {
+            child.close();
+            if (runs != null) {
+                for (Run run : runs) {
+                    run.close();
+                }
+            }
+            sorted = null;
+            runs = null;
+            merging = null;
+        }
+
+        /**
+         * A sorted run of rows in a temporary file, read back one row at a time. Each value is
+         * written as a type tag followed by the value.
+         */
+        private static class Run {
+            private final java.io.File file;
+            private long remaining;
+            private java.io.DataInputStream in;
+            Table.Record current;
+            int index;
+
+            private Run(java.io.File file, long rows) {
+                this.file = file;
+                this.remaining = rows;
+            }
+
+            static Run write(Iterator<Table.Record> rows, long count) {
+                try {
+                    java.io.File file = java.io.File.createTempFile("dbms-sort", ".run");
+                    file.deleteOnExit();
+                    try (java.io.DataOutputStream out = new java.io.DataOutputStream(new java.io.BufferedOutputStream(
+                            new java.io.FileOutputStream(file), 1 << 16))) {
+                        while (rows.hasNext()) {
+                            List<Object> values = rows.next().getValues();
+                            out.writeInt(values.size());
+                            for (Object value : values) {
+                                writeValue(out, value);
+                            }
+                        }
+                    }
+                    return new Run(file, count);
+                } catch (java.io.IOException e) {
+                    throw new java.io.UncheckedIOException("Cannot write sorted rows to a temporary file", e);
+                }
+            }
+
+            private static void writeValue(java.io.DataOutputStream out, Object value) throws java.io.IOException {
+                if (value == null) {
+                    out.writeByte(0);
+                } else if (value instanceof Integer) {
+                    out.writeByte(1);
+                    out.writeInt((Integer) value);
+                } else if (value instanceof Long) {
+                    out.writeByte(2);
+                    out.writeLong((Long) value);
+                } else if (value instanceof Double) {
+                    out.writeByte(3);
+                    out.writeDouble((Double) value);
+                } else {
+                    byte[] bytes = value.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+                    out.writeByte(4);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+
+            private Object readValue() throws java.io.IOException {
+                switch (in.readByte()) {
+                    case 0:
+                        return null;
+                    case 1:
+                        return in.readInt();
+                    case 2:
+                        return in.readLong();
+                    case 3:
+                        return in.readDouble();
+                    default:
+                        byte[] bytes = new byte[in.readInt()];
+                        in.readFully(bytes);
+                        return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+                }
+            }
+
+            /**
+             * Reads the next row into current; returns false once the run is exhausted.
+             */
+            boolean advance() {
+                try {
+                    if (remaining == 0) {
+                        close();
+                        return false;
+                    }
+                    if (in == null) {
+                        in = new java.io.DataInputStream(new java.io.BufferedInputStream(
+                                new java.io.FileInputStream(file), 1 << 16));
+                    }
+                    List<Object> values = new ArrayList<>();
+                    for (int i = in.readInt(); i > 0; i--) {
+                        values.add(readValue());
+                    }
+                    current = new Table.Record(values);
+                    remaining--;
+                    return true;
+                } catch (java.io.IOException e) {
+                    throw new java.io.UncheckedIOException("Cannot read sorted rows from a temporary file", e);
+                }
+            }
+
+            /**
+             * Closes and deletes the file.
+             */
+            void close() {
+                try {
+                    if (in != null) {
+                        in.close();
+                    }
+                } catch (java.io.IOException e) {
+                    // The file is deleted regardless.
+                }
+                in = null;
+                current = null;
+                file.delete();
+            }
+        }
+    }
+
+    // -------------------- Aggregation --------------------
+
+    /**
+     * Groups the rows of its child by the values of some columns and computes aggregate
+     * functions over each group, returning one row per group: the group values followed by the
+     * aggregates, with the groups in the order they were first seen. Without group columns all
+     * rows form one group, returned even when there are none (COUNT is then 0 and the others
+     * NULL). Groups are found in a hash table keyed on their typed values (the value itself for
+     * a single column), and each aggregate keeps its running state in primitive arrays indexed
+     * by group rather than in objects per group; integer sums are exact.
+     */
+    class HashAggregate implements Operator {
+        /**
+         * The aggregate functions. NULL values are skipped, and COUNT without a column
+         * (COUNT(*)) counts rows.
+         */
+        public enum Function {
+            COUNT, SUM, AVG, MIN, MAX
+        }
+
+        private final Operator child;
+        private final int[] groupColumns;
+        private final Function[] functions;
+        private final int[] arguments; // Column of each aggregate, or -1 for COUNT(*).
+        private final Table.Attribute.DataType[] types; // Type of each argument column.
+        private Iterator<Table.Record> results;
+
+        // Per aggregate and group: values counted, and the running sum, minimum or maximum.
+        private long[][] counts;
+        private long[][] longs; // INTEGER arguments
+        private double[][] doubles; // FLOAT arguments
+        private Object[][] texts; // TEXT arguments
+
+        public HashAggregate(Operator child, int[] groupColumns, Function[] functions, int[] arguments,
+                Table.Attribute.DataType[] types) {
+            this.child = child;
+            this.groupColumns = groupColumns;
+            this.functions = functions;
+            this.arguments = arguments;
+            this.types = types;
+        }
+
+        @Override
+        public void open() {
+            Map<Object, Integer> groups = new HashMap<>();
+            List<Object[]> keys = new ArrayList<>();
+            int n = functions.length;
+            counts = new long[n][16];
+            longs = new long[n][];
+            doubles = new double[n][];
+            texts = new Object[n][];
+            for (int k = 0; k < n; k++) {
+                if (arguments[k] >= 0 && functions[k] != Function.COUNT) {
+                    if (types[k] == Table.Attribute.DataType.INTEGER) {
+                        longs[k] = new long[16];
+                    } else if (types[k] == Table.Attribute.DataType.FLOAT) {
+                        doubles[k] = new double[16];
+                    } else {
+                        texts[k] = new Object[16];
+                    }
+                }
+            }
+            if (groupColumns.length == 0) {
+                keys.add(new Object[0]);
+            }
+            child.open();
+            Table.Record row;
+            while ((row = child.next()) != null) {
+                int group = 0;
+                if (groupColumns.length > 0) {
+                    Object[] values = null;
+                    Object key;
+                    if (groupColumns.length == 1) {
+                        key = row.getValue(groupColumns[0]);
+                    } else {
+                        values = new Object[groupColumns.length];
+                        for (int c = 0; c < values.length; c++) {
+                            values[c] = row.getValue(groupColumns[c]);
+                        }
+                        key = Arrays.asList(values);
+                    }
+                    Integer known = groups.get(key);
+                    if (known == null) {
+                        known = keys.size();
+                        groups.put(key, known);
+                        keys.add(values != null ? values : new Object[] { key });
+                        if (n > 0 && known == counts[0].length) {
+                            grow(known * 2);
+                        }
+                    }
+                    group = known;
+                }
+                for (int k = 0; k < n; k++) {
+                    accumulate(k, group, arguments[k] < 0 ? row : row.getValue(arguments[k]));
+                }
+            }
+            List<Table.Record> rows = new ArrayList<>(keys.size());
+            for (int group = 0; group < keys.size(); group++) {
+                List<Object> values = new ArrayList<>(groupColumns.length + n);
+                values.addAll(Arrays.asList(keys.get(group)));
+                for (int k = 0; k < n; k++) {
+                    values.add(result(k, group));
+                }
+                rows.add(new Table.Record(values));
+            }
+            results = rows.iterator();
+            counts = null;
+            longs = null;
+            doubles = null;
+            texts = null;
+        }
+
+        private void grow(int capacity) {
+            for (int k = 0; k < functions.length; k++) {
+                counts[k] = Arrays.copyOf(counts[k], capacity);
+                if (longs[k] != null) {
+                    longs[k] = Arrays.copyOf(longs[k], capacity);
+                } else if (doubles[k] != null) {
+                    doubles[k] = Arrays.copyOf(doubles[k], capacity);
+                } else if (texts[k] != null) {
+                    texts[k] = Arrays.copyOf(texts[k], capacity);
+                }
+            }
+        }
+
+        /**
+         * Adds a value (the whole row for COUNT(*)) to aggregate k of a group.
+         */
+        private void accumulate(int k, int group, Object value) {
+            if (value == null) {
+                return;
+            }
+            boolean first = counts[k][group]++ == 0;
+            Function function = functions[k];
+            if (function == Function.COUNT) {
+                return;
+            }
+            boolean sum = function == Function.SUM || function == Function.AVG;
+            boolean min = function == Function.MIN;
+            if (longs[k] != null) {
+                long x = ((Number) value).longValue();
+                long[] state = longs[k];
+                state[group] = sum ? state[group] + x : first || (min ? x < state[group] : x > state[group]) ? x : state[group];
+            } else if (doubles[k] != null) {
+                double x = ((Number) value).doubleValue();
+                double[] state = doubles[k];
+                state[group] = sum ? state[group] + x : first || (min ? x < state[group] : x > state[group]) ? x : state[group];
+            } else if (!sum) {
+                Object[] state = texts[k];
+                int cmp = first ? 0 : Table.compareValues(value, state[group]);
+                if (first || (min ? cmp < 0 : cmp > 0)) {
+                    state[group] = value;
+                }
+            }
+        }
+
+        /**
+         * Returns the value of aggregate k for a group: COUNT as an Integer, SUM of INTEGER as a
+         * Long, AVG as a Double, and the others in the type of their column; NULL if the group
+         * has no value to aggregate.
+         */
+        private Object result(int k, int group) {
+            long count = counts[k][group];
+            if (functions[k] == Function.COUNT) {
+                return (int) count;
+            }
+            if (count == 0) {
+                return null;
+            }
+            if (longs[k] != null) {
+                long value = longs[k][group];
+                switch (functions[k]) {
+                    case SUM:
+                        return value;
+                    case AVG:
+                        return (double) value / count;
+                    default:
+                        return (int) value;
+                }
+            }
+            if (doubles[k] != null) {
+                double value = doubles[k][group];
+                return functions[k] == Function.AVG ? value / count : value;
+            }
+            return texts[k][group];
+        }
+
+        @Override
+        public Table.Record next() {
+            return results.hasNext() ? results.next() : null;
+        }
+
+        @Override
+        public void close() {
+            child.close();
+            results = null;
+        }
+    }
+
+    // -------------------- Joins --------------------
+
+    /**
+     * Concatenates every outer row with every row of the inner input, which is opened again
+     * for each outer row.
+     */
+    class NestedLoopJoin implements Operator {
+        private final Operator outer;
+        private final Operator inner;
+        private Table.Record outerRow;
+        private boolean innerOpen;
+
+        public NestedLoopJoin(Operator outer, Operator inner) {
+            this.outer = outer;
+            this.inner = inner;
+        }
+
+        @Override
+        public void open() {
+            outer.open();
+            outerRow = null;
+            innerOpen = false;
+        }
+
+        @Override
+        public Table.Record next() {
+            while (true) {
+                if (innerOpen) {
+                    Table.Record innerRow = inner.next();
+                    if (innerRow != null) {
+                        return concat(outerRow, innerRow);
+                    }
+                    inner.close();
+                    innerOpen = false;
+                }
+                outerRow = outer.next();
+                if (outerRow == null) {
+                    return null;
+                }
+                inner.open();
+                innerOpen = true;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (innerOpen) {
+                inner.close();
+                innerOpen = false;
+            }
+            outer.close();
+        }
+    }
+
+    /**
+     * Equi-join: open() builds a hash table over the rows of the inner input (a scan of the inner
+     * table) keyed on the join columns, and each outer row probes it once, so the cost is linear
+     * in input plus output size.
+     */
+    class HashJoin implements Operator {
+        private final Operator outer;
+        private final Operator inner;
+        private final List<int[]> keyColumns; // {outer position, inner position}
+        private final Table.Attribute.DataType[][] types; // {outer type, inner type} per key column
+        private Map<Object, List<Table.Record>> buckets;
+        private Table.Record outerRow;
+        private Iterator<Table.Record> matches = Collections.emptyIterator();
+
+        public HashJoin(Operator outer, Operator inner, List<int[]> keyColumns, Table.Attribute.DataType[][] types) {
+            this.outer = outer;
+            this.inner = inner;
+            this.keyColumns = keyColumns;
+            this.types = types;
+        }
+
+        @Override
+        public void open() {
+            buckets = new HashMap<>();
+            inner.open();
+            Table.Record record;
+            while ((record = inner.next()) != null) {
+                Object key = joinKey(record, 1);
+                if (key != null) {
+                    buckets.computeIfAbsent(key, unused -> new ArrayList<>()).add(record);
+                }
+            }
+            inner.close();
+            outer.open();
+            matches = Collections.emptyIterator();
+        }
+
+        @Override
+        public Table.Record next() {
+            while (!matches.hasNext()) {
+                outerRow = outer.next();
+                if (outerRow == null) {
+                    return null;
+                }
+                Object key = joinKey(outerRow, 0);
+                List<Table.Record> bucket = key == null ? null : buckets.get(key);
+                matches = bucket == null ? Collections.emptyIterator() : bucket.iterator();
+            }
+            return concat(outerRow, matches.next());
+        }
+
+        /**
+         * Builds the hash key of one side (0 = outer, 1 = inner) of the join. Values are normalized
+         * so that keys are equal exactly when the "=" condition would hold: identical types are
+         * used as stored, mixed numeric types as doubles, and anything else as strings.
+         * Returns null if a key column is NULL, since NULL never joins.
+         */
+        private Object joinKey(Table.Record record, int side) {
+            Object[] parts = new Object[keyColumns.size()];
+            for (int k = 0; k < parts.length; k++) {
+                Object value = record.getValue(keyColumns.get(k)[side]);
+                if (value == null) {
+                    return null;
+                }
+                Table.Attribute.DataType own = types[k][side], other = types[k][1 - side];
+                if (own != other) {
+                    boolean numeric = own != Table.Attribute.DataType.TEXT && other != Table.Attribute.DataType.TEXT;
+                    value = numeric ? (Object) (((Number) value).doubleValue() + 0.0) : value.toString();
+                }
+                parts[k] = value;
+            }
+            return parts.length == 1 ? parts[0] : Arrays.asList(parts);
+        }
+
+        @Override
+        public void close() {
+            outer.close();
+            buckets = null;
+        }
+    }
+
+    /**
+     * Equi-join through an index of the inner table: each outer row probes the primary-key index
+     * or a secondary index on the join column (see Table.lookup), so the inner table is never
+     * enumerated. A probe costs O(log m) on a tree and O(1) on average on a hash index.
+     */
+    class IndexNestedLoopJoin implements Operator {
+        private final Operator outer;
+        private final Table inner;
+        private final int outerColumn;
+        private final int innerColumn;
+        private Table.Record outerRow;
+        private Iterator<Table.Record> matches = Collections.emptyIterator();
+        private Profile probes; // Node measuring the probes, while explaining.
+
+        public IndexNestedLoopJoin(Operator outer, Table inner, int outerColumn, int innerColumn) {
+            this.outer = outer;
+            this.inner = inner;
+            this.outerColumn = outerColumn;
+            this.innerColumn = innerColumn;
+        }
+
+        /**
+         * Records the rows found and the time spent and bytes allocated by the probes in the
+         * given node, which EXPLAIN shows as the inner input of the join.
+         */
+        public void measureProbes(Profile probes) {
+            this.probes = probes;
+        }
+
+        @Override
+        public void open() {
+            outer.open();
+            matches = Collections.emptyIterator();
+        }
+
+        @Override
+        public Table.Record next() {
+            while (!matches.hasNext()) {
+                outerRow = outer.next();
+                if (outerRow == null) {
+                    return null;
+                }
+                Object value = outerRow.getValue(outerColumn);
+                long start = probes == null ? 0 : System.nanoTime(), allocated = probes == null ? 0 : Profile.allocatedBytes();
+                matches = value == null ? Collections.<Table.Record>emptyIterator() : inner.lookup(innerColumn, value);
+                if (probes != null) {
+                    probes.record(0, System.nanoTime() - start, Profile.allocatedBytes() - allocated);
+                }
+            }
+            if (probes != null) {
+                probes.record(1, 0, 0);
+            }
+            return concat(outerRow, matches.next());
+        }
+
+        @Override
+        public void close() {
+            outer.close();
+            outerRow = null;
+            matches = Collections.emptyIterator();
+        }
+    }
+
+    /**
+     * Sort-merge join on one column of the inner table: an equi-join, or a band join whose
+     * inequality terms bound the inner column by columns of the outer row (such as
+     * "a.start <= b.t AND b.t < a.end"), which a hash join cannot answer. open() lists the rows
+     * of the inner input (a scan of the inner table) in ascending order of the join column, as
+     * they arrive when the input already ascends on it (a scan in primary-key order) and sorted
+     * otherwise (the records are already in memory, so only references are sorted). Each outer row then starts at the first inner record above its
+     * lower bound and emits records until its upper bound is passed. When the outer rows arrive
+     * in ascending order of the lower-bound column, that start only moves forward and the join
+     * is a single merge pass over both inputs; otherwise it is found by binary search.
+     */
+    class MergeJoin implements Operator {
+        private final Operator outer;
+        private final Operator inner;
+        private final int innerColumn;
+        private final int lowColumn, highColumn; // Outer positions of the bounds, or -1 if open.
+        private final boolean lowInclusive, highInclusive;
+        private final boolean outerAscending; // Whether outer rows come ordered on lowColumn.
+        private final boolean innerAscending; // Whether inner rows come ordered on innerColumn.
+        private List<Table.Record> sorted;
+        private Table.Record outerRow;
+        private int start; // First inner position above the lower bound of the last outer row.
+        private int next;  // Next inner position to try for the current outer row.
+
+        public MergeJoin(Operator outer, Operator inner, int innerColumn, int lowColumn, boolean lowInclusive,
+                int highColumn, boolean highInclusive, boolean outerAscending, boolean innerAscending) {
+            this.outer = outer;
+            this.inner = inner;
+            this.innerColumn = innerColumn;
+            this.lowColumn = lowColumn;
+            this.lowInclusive = lowInclusive;
+            this.highColumn = highColumn;
+            this.highInclusive = highInclusive;
+            this.outerAscending = outerAscending && lowColumn >= 0;
+            this.innerAscending = innerAscending;
+        }
+
+        /**
+         * An equi-join of an outer column with an inner column.
+         */
+        public MergeJoin(Operator outer, Operator inner, int outerColumn, int innerColumn, boolean outerAscending,
+                boolean innerAscending) {
+            this(outer, inner, innerColumn, outerColumn, true, outerColumn, true, outerAscending, innerAscending);
+        }
+
+        @Override
+        public void open() {
+            sorted = new ArrayList<>();
+            inner.open();
+            Table.Record record;
+            while ((record = inner.next()) != null) {
+                // NULL never joins.
+                if (record.getValue(innerColumn) != null) {
+                    sorted.add(record);
+                }
+            }
+            inner.close();
+            if (!innerAscending) {
+                sorted.sort((a, b) -> Table.compareValues(a.getValue(innerColumn), b.getValue(innerColumn)));
+            }
+            outer.open();
+            outerRow = null;
+            start = 0;
+            next = sorted.size();
+        }
+
+        @Override
+        public Table.Record next() {
+            while (true) {
+                if (next < sorted.size()) {
+                    Table.Record candidate = sorted.get(next);
+                    if (highColumn < 0 || belowHigh(candidate.getValue(innerColumn), outerRow.getValue(highColumn))) {
+                        next++;
+                        return concat(outerRow, candidate);
+                    }
+                }
+                outerRow = outer.next();
+                if (outerRow == null) {
+                    return null;
+                }
+                boolean nullBound = (lowColumn >= 0 && outerRow.getValue(lowColumn) == null)
+                        || (highColumn >= 0 && outerRow.getValue(highColumn) == null);
+                next = nullBound ? sorted.size() : lowColumn < 0 ? 0 : firstAboveLow(outerRow.getValue(lowColumn));
+            }
+        }
+
+        /**
+         * Returns the first inner position whose value lies above the lower bound.
+         */
+        private int firstAboveLow(Object low) {
+            if (outerAscending) {
+                while (start < sorted.size() && !aboveLow(sorted.get(start).getValue(innerColumn), low)) {
+                    start++;
+                }
+                return start;
+            }
+            int from = 0, to = sorted.size();
+            while (from < to) {
+                int mid = (from + to) >>> 1;
+                if (aboveLow(sorted.get(mid).getValue(innerColumn), low)) {
+                    to = mid;
+                } else {
+                    from = mid + 1;
+                }
+            }
+            return from;
+        }
+
+        private boolean aboveLow(Object value, Object low) {
+            int cmp = Table.compareValues(value, low);
+            return lowInclusive ? cmp >= 0 : cmp > 0;
+        }
+
+        private boolean belowHigh(Object value, Object high) {
+            int cmp = Table.compareValues(value, high);
+            return highInclusive ? cmp <= 0 : cmp < 0;
+        }
+
+        @Override
+        public void close() {
+            outer.close();
+            sorted = null;
+            outerRow = null;
+        }
+    }
+
+    // -------------------- Profiling --------------------
+
+    /**
+     * A node of a plan shown by EXPLAIN: wraps an operator with a description of what it does,
+     * the rows the planner estimated it returns and the nodes of its inputs. When measured (for
+     * EXPLAIN ANALYZE) it also counts the rows returned and the time spent and bytes allocated
+     * in open(), next() and close(); like the cost of a plan, these include the work of its
+     * inputs. A node without an operator stands for work done outside the operator tree, such
+     * as an UPDATE, and is measured through record().
+     */
+    class Profile implements Operator {
+        private static final java.lang.management.ThreadMXBean THREADS =
+                java.lang.management.ManagementFactory.getThreadMXBean();
+
+        private final Operator operator;
+        private final String description;
+        private final double estimatedRows;
+        private final boolean measured;
+        private final List<Operator> inputs;
+        private long rows, nanos, bytes;
+
+        public Profile(Operator operator, String description, double estimatedRows, boolean measured,
+                Operator... inputs) {
+            this.operator = operator;
+            this.description = description;
+            this.estimatedRows = estimatedRows;
+            this.measured = measured;
+            this.inputs = Arrays.asList(inputs);
+        }
+
+        public double getEstimatedRows() {
+            return estimatedRows;
+        }
+
+        @Override
+        public void open() {
+            long start = System.nanoTime(), allocated = allocatedBytes();
+            operator.open();
+            record(0, System.nanoTime() - start, allocatedBytes() - allocated);
+        }
+
+        @Override
+        public Table.Record next() {
+            if (!measured) {
+                return operator.next();
+            }
+            long start = System.nanoTime(), allocated = allocatedBytes();
+            Table.Record row = operator.next();
+            record(row == null ? 0 : 1, System.nanoTime() - start, allocatedBytes() - allocated);
+            return row;
+        }
+
+        @Override
+        public void close() {
+            long start = System.nanoTime(), allocated = allocatedBytes();
+            operator.close();
+            record(0, System.nanoTime() - start, allocatedBytes() - allocated);
+        }
+
+        /**
+         * Adds rows returned, nanoseconds spent and bytes allocated to the measurements.
+         */
+        public void record(long rows, long nanos, long bytes) {
+            this.rows += rows;
+            this.nanos += nanos;
+            this.bytes += bytes;
+        }
+
+        /**
+         * Returns the bytes allocated so far by the current thread, or 0 if the JVM does not
+         * track them.
+         */
+        public static long allocatedBytes() {
+            if (THREADS instanceof com.sun.management.ThreadMXBean) {
+                long allocated = ((com.sun.management.ThreadMXBean) THREADS).getCurrentThreadAllocatedBytes();
+                return Math.max(allocated, 0);
+            }
+            return 0;
+        }
+
+        /**
+         * Prints this node and, indented below it, the nodes of its inputs.
+         */
+        public void print(String indent) {
+            StringBuilder line = new StringBuilder(indent).append(description)
+                    .append("  (estimated rows: ").append(Math.round(estimatedRows));
+            if (measured) {
+                line.append(", actual rows: ").append(rows)
+                        .append(String.format(", time: %.3f ms, allocated: %.1f KB", nanos / 1e6, bytes / 1024.0));
+            }
+            System.out.println(line.append(")"));
+            String inputIndent = indent.replace("->", "  ") + "  -> ";
+            for (Operator input : inputs) {
+                if (input instanceof Profile) {
+                    ((Profile) input).print(inputIndent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the joined row holding the values of the left row followed by those of the right row.
+     */
+    static Table.Record concat(Table.Record left, Table.Record right) {
+        List<Object> values = new ArrayList<>(left.getValues().size() + right.getValues().size());
+        values.addAll(left.getValues());
+        values.addAll(right.getValues());
+        return new Table.Record(values);
+    }
+}
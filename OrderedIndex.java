@@ -0,0 +1,44 @@
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Common surface of the ordered index structures a Table can use for its primary key.
+ */
+public interface OrderedIndex<K extends Comparable<K>, R> {
+
+    void insert(K key, R record);
+
+    R search(K key);
+
+    void delete(K key);
+
+    /**
+     * Replaces the contents of the index with the given entries, whose keys must be distinct and
+     * in ascending order. The structure is built bottom-up in linear time, so loading n sorted
+     * entries costs far less than n inserts.
+     */
+    void load(List<K> keys, List<R> records);
+
+    /**
+     * Returns every record in key order.
+     */
+    List<R> inOrderTraversal();
+
+    /**
+     * Returns the number of keys in the index.
+     */
+    int size();
+
+    /**
+     * Returns a cursor over the records whose keys fall between the given bounds, in key order.
+     * A null bound leaves that side of the range open.
+     */
+    Iterator<R> range(K low, boolean lowInclusive, K high, boolean highInclusive);
+
+    /**
+     * Returns a cursor over every record in key order.
+     */
+    default Iterator<R> cursor() {
+        return range(null, true, null, true);
+    }
+}
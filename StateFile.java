@@ -0,0 +1,658 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the saved DBMS state in a compact, versioned binary format.
+ *
+ * The state lives in a data directory holding a small catalog file plus one subdirectory per
+ * database with one file per table, so startup only reads the catalog and each table is read
+ * when it is first used. Layout (all numbers big-endian):
+ * <pre>
+ *   catalog: int magic "DBMC", short version, long checkpointLsn, string currentDatabase,
+ *            int databaseCount, then per database:
+ *              string name, int tableCount, per table: string name, string fileName
+ *   table:   int magic "DBMT", short version, string name, byte indexType, byte storageType,
+ *            int attributeCount,
+ *            per attribute: string name, byte dataType, byte keyRank (0 outside the primary key,
+ *            else the attribute's 1-based position in the key),
+ *            int indexCount, per secondary index: string name, int column, byte indexType,
+ *            int rowCount, then per column: int byteLength, null bitmap, values,
+ *            then int keyOrderLength, row numbers in ascending primary-key order
+ * </pre>
+ * Strings are an int length (-1 for null) followed by UTF-8 bytes. Columns are fixed-width so a
+ * value can be read in place: INTEGER and FLOAT columns hold 4 or 8 bytes for every row (zero for
+ * NULL), and TEXT columns hold rowCount + 1 offsets into the UTF-8 bytes that follow them.
+ *
+ * Table files are memory-mapped rather than read. Until a table is first modified its rows are
+ * served straight from the mapping by MappedTable, and the key order stored with the rows stands
+ * in for the primary-key index, so queries on a freshly opened table neither allocate its
+ * records nor build its index.
+ *
+ * Table files are never overwritten: a changed table is saved to a new file and the catalog,
+ * replaced atomically, decides which files are current. A crash in the middle of a save thus
+ * leaves the previous catalog and all the files it names intact.
+ *
+ * Earlier versions kept everything in one file starting with the magic "DBMS"; it can still be read.
+ */
+public class StateFile {
+    private static final int MAGIC = 0x44424D53; // "DBMS", single-file state of version 1
+    private static final int CATALOG_MAGIC = 0x44424D43; // "DBMC"
+    private static final int TABLE_MAGIC = 0x44424D54; // "DBMT"
+    private static final short VERSION = 1;
+    private static final short TABLE_VERSION = 5;
+    private static final short SINGLE_KEY_TABLE_VERSION = 4; // With a primary-key flag, not a rank.
+    private static final short UNINDEXED_TABLE_VERSION = 3; // Without secondary indexes.
+    private static final short UNTYPED_TABLE_VERSION = 2; // Without the storage type.
+    private static final short CATALOG_VERSION = 2;
+    private static final String CATALOG_FILE = "catalog";
+    private static final String TABLE_FILE_SUFFIX = ".tbl";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The contents of a catalog or state file.
+     */
+    public static class Snapshot {
+        private final Map<String, Database> databases;
+        private final String currentDatabase;
+        private final long checkpointLsn;
+
+        Snapshot(Map<String, Database> databases, String currentDatabase, long checkpointLsn) {
+            this.databases = databases;
+            this.currentDatabase = currentDatabase;
+            this.checkpointLsn = checkpointLsn;
+        }
+
+        public Map<String, Database> getDatabases() {
+            return databases;
+        }
+
+        public String getCurrentDatabase() {
+            return currentDatabase;
+        }
+
+        public long getCheckpointLsn() {
+            return checkpointLsn;
+        }
+    }
+
+    /**
+     * Returns whether the file starts with this format's magic number.
+     */
+    public static boolean isStateFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            header.flip();
+            return header.remaining() == 4 && header.getInt() == MAGIC;
+        }
+    }
+
+    // -------------------- Writing --------------------
+
+    /**
+     * Returns whether the data directory holds a saved catalog.
+     */
+    public static boolean hasCatalog(File directory) {
+        return new File(directory, CATALOG_FILE).exists();
+    }
+
+    /**
+     * Saves the state into the data directory. Only tables that are new or modified since they
+     * were last saved are written; the others keep their current files. Files no longer named
+     * by the catalog are deleted afterwards.
+     */
+    public static void save(File directory, Map<String, Database> databases, Database currentDatabase,
+            long checkpointLsn) throws IOException {
+        List<Table> written = new ArrayList<>();
+        for (Database database : databases.values()) {
+            File databaseDirectory = new File(directory, database.getName());
+            if (!databaseDirectory.isDirectory() && !databaseDirectory.mkdirs()) {
+                throw new IOException("Cannot create directory " + databaseDirectory);
+            }
+            database.setDirectory(databaseDirectory);
+            for (Map.Entry<String, Table> entry : database.getTables().entrySet()) {
+                Table table = entry.getValue();
+                if (!table.isModified() && database.getTableFiles().containsKey(entry.getKey())) {
+                    continue;
+                }
+                File file = newTableFile(databaseDirectory, entry.getKey(), checkpointLsn);
+                writeTable(file, table);
+                database.getTableFiles().put(entry.getKey(), file.getName());
+                written.add(table);
+            }
+        }
+
+        File catalog = new File(directory, CATALOG_FILE);
+        File tempCatalog = new File(directory, CATALOG_FILE + ".tmp");
+        try (FileChannel channel = open(tempCatalog)) {
+            Writer out = new Writer(channel);
+            out.ensure(14);
+            out.buffer.putInt(CATALOG_MAGIC).putShort(CATALOG_VERSION).putLong(checkpointLsn);
+            out.putString(currentDatabase == null ? null : currentDatabase.getName());
+            out.putInt(databases.size());
+            for (Database database : databases.values()) {
+                out.putString(database.getName());
+                out.putInt(database.getTableFiles().size());
+                for (Map.Entry<String, String> entry : database.getTableFiles().entrySet()) {
+                    out.putString(entry.getKey());
+                    out.putString(entry.getValue());
+                }
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tempCatalog.toPath(), catalog.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        for (Table table : written) {
+            table.markSaved();
+        }
+        for (Database database : databases.values()) {
+            File[] files = database.getDirectory().listFiles();
+            for (File file : files == null ? new File[0] : files) {
+                if (file.getName().endsWith(TABLE_FILE_SUFFIX)
+                        && !database.getTableFiles().containsValue(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks an unused file name for a new version of a table.
+     */
+    private static File newTableFile(File directory, String tableName, long checkpointLsn) {
+        String base = tableName + "." + checkpointLsn;
+        File file = new File(directory, base + TABLE_FILE_SUFFIX);
+        for (int n = 1; file.exists(); n++) {
+            file = new File(directory, base + "-" + n + TABLE_FILE_SUFFIX);
+        }
+        return file;
+    }
+
+    private static void writeTable(File file, Table table) throws IOException {
+        try (FileChannel channel = open(file)) {
+            Writer out = new Writer(channel);
+            out.ensure(6);
+            out.buffer.putInt(TABLE_MAGIC).putShort(TABLE_VERSION);
+            writeTable(out, table);
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void writeTable(Writer out, Table table) throws IOException {
+        out.putString(table.getName());
+        out.putByte((byte) table.getIndexType().ordinal());
+        out.putByte((byte) table.getStorageType().ordinal());
+        List<Table.Attribute> attributes = table.getAttributes();
+        int[] keyColumns = table.getPrimaryKeyColumns();
+        out.putInt(attributes.size());
+        for (int column = 0; column < attributes.size(); column++) {
+            Table.Attribute attr = attributes.get(column);
+            out.putString(attr.getName());
+            out.putByte((byte) attr.getDataType().ordinal());
+            int rank = 0;
+            for (int k = 0; k < keyColumns.length; k++) {
+                if (keyColumns[k] == column) {
+                    rank = k + 1;
+                }
+            }
+            out.putByte((byte) rank);
+        }
+        List<Table.SecondaryIndex> indexes = table.getSecondaryIndexes();
+        out.putInt(indexes.size());
+        for (Table.SecondaryIndex index : indexes) {
+            out.putString(index.getName());
+            out.putInt(index.getColumn());
+            out.putByte((byte) index.getType().ordinal());
+        }
+        List<Table.Record> records = table.getRecords();
+        int rows = records.size();
+        out.putInt(rows);
+        for (int column = 0; column < attributes.size(); column++) {
+            Table.Attribute.DataType type = attributes.get(column).getDataType();
+            byte[] nulls = new byte[(rows + 7) / 8];
+            byte[][] texts = type == Table.Attribute.DataType.TEXT ? new byte[rows][] : null;
+            int textLength = 0;
+            for (int row = 0; row < rows; row++) {
+                Object value = records.get(row).getValue(column);
+                if (value == null) {
+                    nulls[row >> 3] |= 1 << (row & 7);
+                } else if (texts != null) {
+                    texts[row] = value.toString().getBytes(StandardCharsets.UTF_8);
+                    textLength += texts[row].length;
+                }
+            }
+            int length = nulls.length;
+            if (type == Table.Attribute.DataType.INTEGER) {
+                length += 4 * rows;
+            } else if (type == Table.Attribute.DataType.FLOAT) {
+                length += 8 * rows;
+            } else {
+                length += 4 * (rows + 1) + textLength;
+            }
+            out.putInt(length);
+            out.putBytes(nulls);
+            if (texts != null) {
+                int offset = 0;
+                out.putInt(offset);
+                for (int row = 0; row < rows; row++) {
+                    offset += texts[row] == null ? 0 : texts[row].length;
+                    out.putInt(offset);
+                }
+            }
+            for (int row = 0; row < rows; row++) {
+                Object value = records.get(row).getValue(column);
+                if (type == Table.Attribute.DataType.INTEGER) {
+                    out.putInt(value == null ? 0 : ((Number) value).intValue());
+                } else if (type == Table.Attribute.DataType.FLOAT) {
+                    out.ensure(8);
+                    out.buffer.putDouble(value == null ? 0 : ((Number) value).doubleValue());
+                } else if (texts[row] != null) {
+                    out.putBytes(texts[row]);
+                }
+            }
+        }
+        if (table.getPrimaryKeyIndex() < 0) {
+            out.putInt(0);
+            return;
+        }
+        Map<Table.Record, Integer> rowNumbers = new IdentityHashMap<>(rows);
+        for (int row = 0; row < rows; row++) {
+            rowNumbers.put(records.get(row), row);
+        }
+        out.putInt(4 * rows);
+        Iterator<Table.Record> inKeyOrder = table.scan(null);
+        while (inKeyOrder.hasNext()) {
+            out.putInt(rowNumbers.get(inKeyOrder.next()));
+        }
+    }
+
+    /**
+     * Buffers output and writes it to the channel in large blocks.
+     */
+    private static class Writer {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+                if (buffer.capacity() < bytes) {
+                    buffer = ByteBuffer.allocate(bytes);
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void putByte(byte value) throws IOException {
+            ensure(1);
+            buffer.put(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        void putString(String value) throws IOException {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            putBytes(bytes);
+        }
+    }
+
+    // -------------------- Reading --------------------
+
+    /**
+     * Reads the catalog of the data directory. Tables are not read; each database loads them
+     * from their files on first access.
+     */
+    public static Snapshot readCatalog(File directory) throws IOException {
+        ByteBuffer in = readFile(new File(directory, CATALOG_FILE));
+        try {
+            if (in.getInt() != CATALOG_MAGIC) {
+                throw new IOException("Not a DBMS catalog file.");
+            }
+            short version = in.getShort();
+            if (version != CATALOG_VERSION) {
+                throw new IOException("Unsupported catalog version " + version + ".");
+            }
+            long checkpointLsn = in.getLong();
+            String currentDatabase = getString(in);
+            int databaseCount = in.getInt();
+            Map<String, Database> databases = new HashMap<>();
+            for (int d = 0; d < databaseCount; d++) {
+                Database database = new Database(getString(in));
+                database.setDirectory(new File(directory, database.getName()));
+                int tableCount = in.getInt();
+                for (int t = 0; t < tableCount; t++) {
+                    String tableName = getString(in);
+                    database.getTableFiles().put(tableName, getString(in));
+                }
+                databases.put(database.getName(), database);
+            }
+            return new Snapshot(databases, currentDatabase, checkpointLsn);
+        } catch (RuntimeException e) {
+            // Buffer underflows mean the file is damaged.
+            throw new IOException("Corrupt catalog file: " + e, e);
+        }
+    }
+
+    /**
+     * Opens one table file. Tables saved by this version are memory-mapped; older table files
+     * are read into memory and their index rebuilt.
+     */
+    public static Table readTable(File file) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed.
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (in.getInt() != TABLE_MAGIC) {
+                throw new IOException("Not a DBMS table file: " + file.getName());
+            }
+            short version = in.getShort();
+            Table table;
+            if (version == VERSION) {
+                table = readTable(in);
+            } else if (version >= UNTYPED_TABLE_VERSION && version <= TABLE_VERSION) {
+                table = readHeader(in, version);
+                table.attach(new MappedTable(in, table.getAttributes(), file.getName()));
+            } else {
+                throw new IOException("Unsupported table file version " + version + ".");
+            }
+            table.markSaved();
+            return table;
+        } catch (RuntimeException e) {
+            // Buffer underflows and bad enum ordinals mean the file is damaged.
+            throw new IOException("Corrupt table file " + file.getName() + ": " + e, e);
+        }
+    }
+
+    /**
+     * Reads a single-file state saved by version 1. Its tables are saved to the data directory
+     * at the next checkpoint.
+     */
+    public static Snapshot read(File file) throws IOException {
+        ByteBuffer in = readFile(file);
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a DBMS state file.");
+            }
+            short version = in.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported state file version " + version + ".");
+            }
+            long checkpointLsn = in.getLong();
+            String currentDatabase = getString(in);
+            int databaseCount = in.getInt();
+            Map<String, Database> databases = new HashMap<>();
+            for (int d = 0; d < databaseCount; d++) {
+                Database database = new Database(getString(in));
+                int tableCount = in.getInt();
+                for (int t = 0; t < tableCount; t++) {
+                    Table table = readTable(in);
+                    database.getTables().put(table.getName(), table);
+                }
+                databases.put(database.getName(), database);
+            }
+            return new Snapshot(databases, currentDatabase, checkpointLsn);
+        } catch (RuntimeException e) {
+            // Buffer underflows and bad enum ordinals mean the file is damaged.
+            throw new IOException("Corrupt state file: " + e, e);
+        }
+    }
+
+    private static ByteBuffer readFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large: " + file.getName() + " (" + size + " bytes).");
+            }
+            ByteBuffer in = ByteBuffer.allocate((int) size);
+            while (in.hasRemaining() && channel.read(in) >= 0) {
+            }
+            in.flip();
+            return in;
+        }
+    }
+
+    /**
+     * Reads a table's name, index type, storage type and schema, and its secondary index
+     * definitions, as far as the given file version stores them, and returns it as an empty table.
+     */
+    private static Table readHeader(ByteBuffer in, short version) {
+        String name = getString(in);
+        Table.IndexType indexType = Table.IndexType.values()[in.get()];
+        Table.StorageType storageType = version >= UNINDEXED_TABLE_VERSION ? Table.StorageType.values()[in.get()]
+                : Table.StorageType.ROW;
+        int attributeCount = in.getInt();
+        List<Table.Attribute> attributes = new ArrayList<>(attributeCount);
+        int[] ranks = new int[attributeCount];
+        int keyLength = 0;
+        for (int i = 0; i < attributeCount; i++) {
+            String attrName = getString(in);
+            Table.Attribute.DataType type = Table.Attribute.DataType.values()[in.get()];
+            int rank = in.get();
+            attributes.add(new Table.Attribute(attrName, type, rank != 0));
+            // Before ranks were stored, the first flagged attribute was the whole key.
+            if (version <= SINGLE_KEY_TABLE_VERSION && rank != 0) {
+                rank = keyLength == 0 ? 1 : 0;
+            }
+            ranks[i] = rank;
+            keyLength += rank != 0 ? 1 : 0;
+        }
+        int[] keyColumns = new int[keyLength];
+        Arrays.fill(keyColumns, -1);
+        for (int i = 0; i < attributeCount; i++) {
+            if (ranks[i] == 0) {
+                continue;
+            }
+            if (ranks[i] < 0 || ranks[i] > keyLength || keyColumns[ranks[i] - 1] >= 0) {
+                throw new IllegalArgumentException("key rank " + ranks[i]);
+            }
+            keyColumns[ranks[i] - 1] = i;
+        }
+        Table table = new Table(name, attributes, indexType, storageType, keyColumns);
+        if (version >= SINGLE_KEY_TABLE_VERSION) {
+            int indexCount = in.getInt();
+            for (int i = 0; i < indexCount; i++) {
+                String indexName = getString(in);
+                int column = in.getInt();
+                if (column < 0 || column >= attributeCount) {
+                    throw new IllegalArgumentException("index column " + column);
+                }
+                table.defineIndex(indexName, column, Table.IndexType.values()[in.get()]);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Reads a table block of version 1, whose columns only hold the non-null values.
+     */
+    private static Table readTable(ByteBuffer in) {
+        Table table = readHeader(in, VERSION);
+        String name = table.getName();
+        List<Table.Attribute> attributes = table.getAttributes();
+        int attributeCount = attributes.size();
+        int rows = in.getInt();
+        Object[][] values = new Object[rows][attributeCount];
+        for (int column = 0; column < attributeCount; column++) {
+            Table.Attribute.DataType type = attributes.get(column).getDataType();
+            int end = in.getInt();
+            end += in.position();
+            byte[] nulls = new byte[(rows + 7) / 8];
+            in.get(nulls);
+            for (int row = 0; row < rows; row++) {
+                if ((nulls[row >> 3] & (1 << (row & 7))) != 0) {
+                    continue;
+                }
+                if (type == Table.Attribute.DataType.INTEGER) {
+                    values[row][column] = in.getInt();
+                } else if (type == Table.Attribute.DataType.FLOAT) {
+                    values[row][column] = in.getDouble();
+                } else {
+                    values[row][column] = getString(in);
+                }
+            }
+            if (in.position() != end) {
+                throw new IllegalStateException("column " + column + " of table '" + name + "' has the wrong length");
+            }
+        }
+        List<Table.Record> records = new ArrayList<>(rows);
+        for (Object[] row : values) {
+            List<Object> rowValues = new ArrayList<>(attributeCount);
+            for (Object value : row) {
+                rowValues.add(value);
+            }
+            records.add(new Table.Record(rowValues));
+        }
+        table.restore(records);
+        return table;
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // -------------------- Mapped Tables --------------------
+
+    /**
+     * Read-only access to the rows of a memory-mapped table file. Values are decoded from the
+     * mapping when they are asked for, so scanning a column touches only that column's pages.
+     */
+    public static class MappedTable {
+        private final ByteBuffer data;
+        private final Table.Attribute.DataType[] types;
+        private final int rows;
+        private final int[] nullsAt;  // Position of each column's null bitmap.
+        private final int[] valuesAt; // Position of each column's values (TEXT: its offsets).
+        private final int keyOrderAt; // Position of the key order, or -1 without a primary key.
+
+        MappedTable(ByteBuffer in, List<Table.Attribute> attributes, String fileName) throws IOException {
+            this.data = in;
+            this.types = new Table.Attribute.DataType[attributes.size()];
+            this.rows = in.getInt();
+            this.nullsAt = new int[types.length];
+            this.valuesAt = new int[types.length];
+            for (int column = 0; column < types.length; column++) {
+                types[column] = attributes.get(column).getDataType();
+                int length = in.getInt();
+                nullsAt[column] = in.position();
+                valuesAt[column] = nullsAt[column] + (rows + 7) / 8;
+                in.position(nullsAt[column] + length);
+            }
+            int keyOrderLength = in.getInt();
+            if (keyOrderLength != 0 && keyOrderLength != 4 * rows) {
+                throw new IOException("Corrupt table file " + fileName + ": bad key order length");
+            }
+            this.keyOrderAt = keyOrderLength == 0 ? -1 : in.position();
+            in.position(in.position() + keyOrderLength);
+        }
+
+        public int getRowCount() {
+            return rows;
+        }
+
+        public Object getValue(int row, int column) {
+            if ((data.get(nullsAt[column] + (row >> 3)) & (1 << (row & 7))) != 0) {
+                return null;
+            }
+            int at = valuesAt[column];
+            switch (types[column]) {
+                case INTEGER:
+                    return data.getInt(at + 4 * row);
+                case FLOAT:
+                    return data.getDouble(at + 8 * row);
+                default:
+                    int start = data.getInt(at + 4 * row);
+                    int end = data.getInt(at + 4 * row + 4);
+                    byte[] bytes = new byte[end - start];
+                    data.get(at + 4 * (rows + 1) + start, bytes);
+                    return new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+
+        /**
+         * Returns whether the file stores the rows' primary-key order.
+         */
+        public boolean hasKeyOrder() {
+            return keyOrderAt >= 0;
+        }
+
+        /**
+         * Returns the row with the given position in primary-key order.
+         */
+        public int rowInKeyOrder(int rank) {
+            return data.getInt(keyOrderAt + 4 * rank);
+        }
+
+        /**
+         * Returns a record whose values are read from the mapping on access. The record cannot
+         * be modified.
+         */
+        public Table.Record row(int row) {
+            return new Table.Record(new AbstractList<Object>() {
+                @Override
+                public Object get(int column) {
+                    return getValue(row, column);
+                }
+
+                @Override
+                public int size() {
+                    return types.length;
+                }
+            });
+        }
+    }
+}
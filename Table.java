@@ -1,164 +1,1347 @@
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 public class Table implements Serializable {
     private static final long serialVersionUID = 1L;
     
     private String name;
     private List<Attribute> attributes;
-    private List<Record> records;
-    private String primaryKey; // Name of the primary key attribute.
+    private List<Record> records; // With column storage, a read-only view of the columns.
+    private String primaryKey; // Name of the primary key attribute(s), comma-separated.
+    private int primaryKeyIndex = -1; // Position of the (leading) primary key attribute in the schema.
+    private int[] keyColumns = new int[0]; // Positions of the primary key attributes, in key order.
+    private IndexType indexType;
+    private StorageType storageType;
     
-    // Uses a type-safe BST (implemented in BinarySearchTree) with a helper KeyWrapper.
-    private BinarySearchTree<KeyWrapper, Record> bstIndex;
+    // Primitive column storage of the rows, or null if they are kept as Records.
+    private ColumnStore columns;
+    
+    // Positions of deleted rows still present in records (as null with row storage) until the
+    // next compaction; null when there are none.
+    private transient BitSet tombstones;
+    private transient int deadCount;
+    
+    // Share of deleted rows in storage above which a delete compacts the table.
+    private static final double COMPACTION_THRESHOLD = 0.25;
+    
+    // Ordered primary-key index (BinarySearchTree or BPlusTree) over a helper KeyWrapper.
+    private OrderedIndex<KeyWrapper, Record> primaryIndex;
+    
+    // Indexes on other columns, created with CREATE INDEX; null in state saved before they existed.
+    private List<SecondaryIndex> secondaryIndexes;
+    
+    // Whether the table changed since it was last saved.
+    private transient boolean modified = true;
+    
+    // Memory-mapped file serving the rows of a table that has not been modified since it was
+    // opened. While set, records and primaryIndex are not populated.
+    private transient StateFile.MappedTable mapped;
+    
+    // Statistics of the rows, gathered by analyze() when first needed, and the number of rows
+    // inserted, updated or deleted since.
+    private transient Statistics statistics;
+    private transient int changes;
+    
+    // Share of changed rows above which the statistics are gathered again before their next use.
+    private static final double STALE_STATISTICS = 0.2;
+    
+    /**
+     * The kinds of index a table can keep. The primary key uses one of the ordered kinds;
+     * HASH, which only answers equality, and BITMAP, for columns with few distinct values, are
+     * available for secondary indexes.
+     */
+    public enum IndexType {
+        BST, BTREE, HASH, BITMAP
+    }
+    
+    /**
+     * How a table keeps its rows: as one Record object per row, or column by column in
+     * primitive arrays (see ColumnStore), which takes far less memory per row.
+     */
+    public enum StorageType {
+        ROW, COLUMN
+    }
     
     public Table(String name, List<Attribute> attributes) {
+        this(name, attributes, IndexType.BST);
+    }
+    
+    public Table(String name, List<Attribute> attributes, IndexType indexType) {
+        this(name, attributes, indexType, StorageType.ROW);
+    }
+    
+    /**
+     * Creates a table whose primary key is made of the attributes flagged as such, in schema order.
+     */
+    public Table(String name, List<Attribute> attributes, IndexType indexType, StorageType storageType) {
+        this(name, attributes, indexType, storageType, flaggedColumns(attributes));
+    }
+    
+    /**
+     * Creates a table whose primary key is made of the given attributes, which must be flagged as
+     * primary key, compared in the given order. A key of several attributes is a CompositeKey.
+     */
+    public Table(String name, List<Attribute> attributes, IndexType indexType, StorageType storageType,
+            int[] keyColumns) {
         this.name = name;
         this.attributes = attributes;
-        this.records = new ArrayList<>();
-        // Look for a primary key in the schema.
-        for (Attribute attr : attributes) {
+        this.indexType = indexType;
+        this.storageType = storageType;
+        if (storageType == StorageType.COLUMN) {
+            this.columns = new ColumnStore(attributes);
+            this.records = columns.rows();
+        } else {
+            this.records = new ArrayList<>();
+        }
+        if (keyColumns.length > 0) {
+            this.keyColumns = keyColumns.clone();
+            this.primaryKeyIndex = keyColumns[0];
+            this.primaryKey = keyNames();
+            // Initialize the primary-key index.
+            this.primaryIndex = newIndex();
+        }
+    }
+    
+    /**
+     * Returns the positions of the attributes flagged as primary key, in schema order.
+     */
+    private static int[] flaggedColumns(List<Attribute> attributes) {
+        int[] flagged = new int[attributes.size()];
+        int count = 0;
+        for (int i = 0; i < attributes.size(); i++) {
+            if (attributes.get(i).isPrimaryKey()) {
+                flagged[count++] = i;
+            }
+        }
+        return Arrays.copyOf(flagged, count);
+    }
+    
+    private String keyNames() {
+        StringBuilder names = new StringBuilder();
+        for (int column : keyColumns) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(attributes.get(column).getName());
+        }
+        return names.toString();
+    }
+    
+    private OrderedIndex<KeyWrapper, Record> newIndex() {
+        if (indexType == IndexType.BTREE) {
+            return new BPlusTree<>();
+        }
+        return new BinarySearchTree<>();
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public List<Attribute> getAttributes() {
+        return attributes;
+    }
+    
+    public List<Record> getRecords() {
+        materialize();
+        compact();
+        return records;
+    }
+    
+    /**
+     * Returns the records in insertion order for reading only. A table still backed by its
+     * mapped file returns views over the file instead of loading every record.
+     */
+    public List<Record> readRecords() {
+        if (mapped == null) {
+            compact();
+            return records;
+        }
+        StateFile.MappedTable file = mapped;
+        return new AbstractList<Record>() {
+            @Override
+            public Record get(int row) {
+                return file.row(row);
+            }
+            
+            @Override
+            public int size() {
+                return file.getRowCount();
+            }
+        };
+    }
+    
+    /**
+     * Returns the number of rows in the table.
+     */
+    public int getRowCount() {
+        return mapped != null ? mapped.getRowCount() : records.size() - deadCount;
+    }
+    
+    public String getPrimaryKey() {
+        return primaryKey;
+    }
+    
+    /**
+     * Returns the position of the primary key attribute in the schema, or of the leading one for
+     * a composite key, or -1 if there is none.
+     */
+    public int getPrimaryKeyIndex() {
+        return primaryKeyIndex;
+    }
+    
+    /**
+     * Returns the positions of the primary key attributes in key order (empty if there is none).
+     */
+    public int[] getPrimaryKeyColumns() {
+        return keyColumns.clone();
+    }
+    
+    public IndexType getIndexType() {
+        return indexType;
+    }
+    
+    public StorageType getStorageType() {
+        return storageType;
+    }
+    
+    public OrderedIndex<KeyWrapper, Record> getPrimaryIndex() {
+        materialize();
+        return primaryIndex;
+    }
+    
+    /**
+     * Serves the table's rows from a memory-mapped file until it is first modified.
+     */
+    void attach(StateFile.MappedTable file) {
+        mapped = file;
+    }
+    
+    /**
+     * Returns the secondary indexes of the table, in creation order.
+     */
+    public List<SecondaryIndex> getSecondaryIndexes() {
+        return secondaryIndexes == null ? Collections.<SecondaryIndex>emptyList() : secondaryIndexes;
+    }
+    
+    /**
+     * Creates an ordered index on a non-key column and builds it from the current rows.
+     */
+    public boolean createIndex(String indexName, String columnName, IndexType type) {
+        if (findIndex(indexName) != null) {
+            System.out.println("Error: Index '" + indexName + "' already exists on table '" + name + "'.");
+            return false;
+        }
+        int column = -1;
+        for (int i = 0; i < attributes.size(); i++) {
+            if (attributes.get(i).getName().equalsIgnoreCase(columnName)) {
+                column = i;
+                break;
+            }
+        }
+        if (column < 0) {
+            System.out.println("Error: Attribute '" + columnName + "' does not exist in table '" + name + "'.");
+            return false;
+        }
+        if (column == primaryKeyIndex && keyColumns.length == 1) {
+            System.out.println("Error: Attribute '" + columnName + "' is the primary key and is already indexed.");
+            return false;
+        }
+        SecondaryIndex index = defineIndex(indexName, column, type);
+        built(index);
+        modified = true;
+        System.out.println("Index '" + indexName + "' created on " + name + "(" + attributes.get(column).getName() + ").");
+        return true;
+    }
+    
+    /**
+     * Adds a secondary index without building it, e.g. when reading saved state; it is built
+     * from the rows on first use.
+     */
+    SecondaryIndex defineIndex(String indexName, int column, IndexType type) {
+        if (secondaryIndexes == null) {
+            secondaryIndexes = new ArrayList<>();
+        }
+        SecondaryIndex index = new SecondaryIndex(indexName, column, type, attributes.get(column).getDataType());
+        secondaryIndexes.add(index);
+        return index;
+    }
+    
+    public boolean dropIndex(String indexName) {
+        SecondaryIndex index = findIndex(indexName);
+        if (index == null) {
+            System.out.println("Error: Index '" + indexName + "' does not exist on table '" + name + "'.");
+            return false;
+        }
+        secondaryIndexes.remove(index);
+        modified = true;
+        System.out.println("Index '" + indexName + "' dropped from table '" + name + "'.");
+        return true;
+    }
+    
+    /**
+     * Returns the secondary index with the given name (ignoring case), or null if there is none.
+     */
+    public SecondaryIndex findIndex(String indexName) {
+        for (SecondaryIndex index : getSecondaryIndexes()) {
+            if (index.getName().equalsIgnoreCase(indexName)) {
+                return index;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Returns a secondary index ready for lookups, building it first if needed.
+     */
+    private SecondaryIndex built(SecondaryIndex index) {
+        if (!index.isBuilt()) {
+            index.build(indexableRecords(index.getType() != IndexType.BITMAP), deadCount == 0 ? null : tombstones);
+        }
+        return index;
+    }
+    
+    /**
+     * Returns the rows by position, as records an index can read: the mapped rows of a mapped
+     * table, or the stored records. With column storage, lasting asks for the lasting row views
+     * so that an index can hold them. Deleted rows not yet compacted away are still included.
+     */
+    private List<Record> indexableRecords(boolean lasting) {
+        if (mapped != null) {
+            return readRecords();
+        }
+        if (columns == null || !lasting) {
+            return records;
+        }
+        return new AbstractList<Record>() {
+            @Override
+            public Record get(int row) {
+                return columns.row(row);
+            }
+            
+            @Override
+            public int size() {
+                return columns.size();
+            }
+        };
+    }
+    
+    /**
+     * Adds a stored record, at the given row position, to the secondary indexes that are built.
+     */
+    private void indexSecondary(Record record, int row) {
+        for (SecondaryIndex index : getSecondaryIndexes()) {
+            if (index.isBuilt()) {
+                index.add(record, row);
+            }
+        }
+    }
+    
+    /**
+     * Removes a record, at the given row position, from the secondary indexes that are built.
+     */
+    private void unindexSecondary(Record record, int row) {
+        for (SecondaryIndex index : getSecondaryIndexes()) {
+            if (index.isBuilt()) {
+                index.remove(record, row);
+            }
+        }
+    }
+    
+    /**
+     * Whether a secondary index holds records (rather than row positions), so that with column
+     * storage every row needs a lasting view.
+     */
+    private boolean holdsRecords() {
+        for (SecondaryIndex index : getSecondaryIndexes()) {
+            if (index.getType() != IndexType.BITMAP) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Copies the rows of a mapped table into memory and builds its primary-key index, so the
+     * table can be modified. Does nothing for a table that is already in memory.
+     */
+    private void materialize() {
+        if (mapped == null) {
+            return;
+        }
+        StateFile.MappedTable file = mapped;
+        mapped = null;
+        // Indexes built over the mapped rows are rebuilt over the copies on their next use.
+        for (SecondaryIndex index : getSecondaryIndexes()) {
+            index.reset();
+        }
+        List<Record> stored = new ArrayList<>(primaryIndex != null ? file.getRowCount() : 0);
+        for (int row = 0; row < file.getRowCount(); row++) {
+            List<Object> values = new ArrayList<>(attributes.size());
+            for (int column = 0; column < attributes.size(); column++) {
+                values.add(file.getValue(row, column));
+            }
+            Record record = append(new Record(values));
+            if (primaryIndex != null) {
+                stored.add(record);
+            }
+        }
+        if (primaryIndex != null) {
+            // The saved key order spares sorting the keys again.
+            List<Record> inKeyOrder = stored;
+            if (file.hasKeyOrder()) {
+                inKeyOrder = new ArrayList<>(stored.size());
+                for (int rank = 0; rank < stored.size(); rank++) {
+                    inKeyOrder.add(stored.get(file.rowInKeyOrder(rank)));
+                }
+            }
+            loadPrimaryIndex(inKeyOrder);
+        }
+    }
+    
+    /**
+     * Brings a table read from state that earlier versions saved with Java serialization up to
+     * date. Fields those versions did not have are filled in, the primary key is taken from the
+     * flagged attributes, values stored as text are converted to their declared types and the
+     * primary-key index is rebuilt from the rows. The table is marked modified so the next
+     * checkpoint writes it out.
+     *
+     * @throws NumberFormatException if a stored value does not fit its attribute's type.
+     */
+    void migrate() {
+        if (indexType == null) {
+            indexType = IndexType.BST;
+        }
+        // Java-serialized state predates column storage and secondary indexes.
+        storageType = StorageType.ROW;
+        columns = null;
+        secondaryIndexes = null;
+        if (keyColumns == null) {
+            keyColumns = flaggedColumns(attributes);
+        }
+        primaryKeyIndex = keyColumns.length > 0 ? keyColumns[0] : -1;
+        primaryKey = keyColumns.length > 0 ? keyNames() : null;
+        List<Record> rows = new ArrayList<>(records.size());
+        for (Record record : records) {
+            if (record == null) {
+                continue;
+            }
+            List<Object> values = new ArrayList<>(attributes.size());
+            for (int i = 0; i < attributes.size(); i++) {
+                values.add(convertValue(record.getValue(i), attributes.get(i).getDataType()));
+            }
+            rows.add(new Record(values));
+        }
+        records = new ArrayList<>();
+        primaryIndex = keyColumns.length > 0 ? newIndex() : null;
+        restore(rows);
+        modified = true;
+    }
+    
+    /**
+     * Returns whether the table changed since it was last saved, so a checkpoint only rewrites
+     * tables that need it.
+     */
+    public boolean isModified() {
+        return modified;
+    }
+    
+    public void markModified() {
+        modified = true;
+    }
+    
+    public void markSaved() {
+        modified = false;
+    }
+    
+    /**
+     * Validates a record against the table's schema and converts its values to their declared types.
+     * Checks that:
+     *  - The number of values equals the number of attributes.
+     *  - Each value conforms to the attribute's domain.
+     *  - For a primary key attribute, the value is not null or empty.
+     * On success every value is stored as an Integer, Double or String, so later comparisons
+     * never have to re-parse it.
+     */
+    private boolean validateRecord(Record record) {
+        if (record.getValues().size() != attributes.size()) {
+            System.out.println("Error: Number of values does not match table schema.");
+            return false;
+        }
+        Object[] converted = new Object[attributes.size()];
+        for (int i = 0; i < attributes.size(); i++) {
+            Attribute attr = attributes.get(i);
+            Object value = record.getValue(i);
+            
+            // Entity Integrity: Primary key must not be null or blank.
             if (attr.isPrimaryKey()) {
-                this.primaryKey = attr.getName();
-                // Initialize the BST index.
-                this.bstIndex = new BinarySearchTree<>();
+                if (value == null || value.toString().trim().isEmpty()) {
+                    System.out.println("Error: Primary key attribute '" + attr.getName() + "' cannot be null or empty.");
+                    return false;
+                }
+            }
+            if (value == null) {
+                continue;
+            }
+            
+            // Domain Constraints
+            try {
+                converted[i] = convertValue(value, attr.getDataType());
+            } catch (NumberFormatException e) {
+                String typeName = attr.getDataType() == Attribute.DataType.INTEGER ? "integer" : "float";
+                System.out.println("Error: Value for attribute '" + attr.getName() + "' is not a valid " + typeName + ".");
+                return false;
+            }
+            if (attr.getDataType() == Attribute.DataType.TEXT) {
+                String text = value.toString();
+                if (text.length() > 100) {
+                    System.out.println("Error: Value for attribute '" + attr.getName() + "' exceeds 100 characters.");
+                    return false;
+                }
+            }
+        }
+        for (int i = 0; i < converted.length; i++) {
+            record.setValue(i, converted[i]);
+        }
+        return true;
+    }
+    
+    /**
+     * Converts a value to the Java type used to store the given data type:
+     * Integer for INTEGER, Double for FLOAT and String for TEXT. Values that already
+     * have the right type are returned unchanged.
+     *
+     * @throws NumberFormatException if a numeric value cannot be parsed.
+     */
+    public static Object convertValue(Object value, Attribute.DataType dataType) {
+        if (value == null) {
+            return null;
+        }
+        switch (dataType) {
+            case INTEGER:
+                return value instanceof Integer ? value : Integer.valueOf(value.toString().trim());
+            case FLOAT:
+                return value instanceof Double ? value : Double.valueOf(value.toString().trim());
+            default:
+                return value instanceof String ? value : value.toString();
+        }
+    }
+    
+    /**
+     * Formats a stored value for display.
+     */
+    public static String formatValue(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        if (value instanceof Double) {
+            double d = (Double) value;
+            if (!Double.isNaN(d) && !Double.isInfinite(d)) {
+                return java.math.BigDecimal.valueOf(d).toPlainString();
+            }
+        }
+        return value.toString();
+    }
+    
+    /**
+     * Inserts a record into the table.
+     * Validates the record (domain and entity constraints) and checks for duplicate primary key values.
+     */
+    public boolean insert(Record record) {
+        if (!validateRecord(record)) {
+            return false;
+        }
+        materialize();
+        
+        KeyWrapper wrappedKey = null;
+        if (primaryIndex != null) {
+            wrappedKey = keyOf(record);
+            // Check for duplicate key.
+            Record existingRecord = primaryIndex.search(wrappedKey);
+            if (existingRecord != null) {
+                System.out.println("Error: Duplicate primary key value: " + wrappedKey);
+                return false;
+            }
+        }
+        Record stored = append(record);
+        if (primaryIndex != null) {
+            primaryIndex.insert(wrappedKey, stored);
+        }
+        // Without an index holding records there is no stored record; bitmaps only read the values.
+        indexSecondary(stored != null ? stored : record, records.size() - 1);
+        modified = true;
+        changes++;
+        System.out.println("Record inserted into table '" + name + "'.");
+        return true;
+    }
+    
+    /**
+     * Adds records read back from saved state. Their values already have their declared types,
+     * so they are only stored and indexed, without validation or output; the primary-key index
+     * is built in bulk once all of them are stored.
+     */
+    void restore(List<Record> rows) {
+        List<Record> stored = new ArrayList<>(rows.size());
+        for (Record record : rows) {
+            Record kept = append(record);
+            indexSecondary(kept != null ? kept : record, records.size() - 1);
+            stored.add(kept);
+        }
+        if (primaryIndex != null) {
+            loadPrimaryIndex(stored);
+        }
+    }
+    
+    /**
+     * Inserts many records at once, with the checks insert() makes but without its line of
+     * output per record. Records are stored in the order given, and one whose key is already
+     * taken is rejected as by insert(). Instead of a search and an insert per record, the new
+     * keys are sorted once, merged with the indexed keys and the primary-key index is rebuilt
+     * from the merged order bottom-up.
+     *
+     * @return The number of records inserted.
+     */
+    public int insertAll(List<Record> incoming) {
+        materialize();
+        List<Record> valid = new ArrayList<>(incoming.size());
+        for (Record record : incoming) {
+            if (validateRecord(record)) {
+                valid.add(record);
+            }
+        }
+        if (primaryIndex == null) {
+            for (Record record : valid) {
+                Record stored = append(record);
+                indexSecondary(stored != null ? stored : record, records.size() - 1);
+            }
+            modified |= !valid.isEmpty();
+            changes += valid.size();
+            return valid.size();
+        }
+        
+        // Sort the new records by key; the sort is stable, so the first of equal keys leads.
+        List<KeyWrapper> keys = new ArrayList<>(valid.size());
+        for (Record record : valid) {
+            keys.add(keyOf(record));
+        }
+        Integer[] order = new Integer[valid.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> keys.get(a).compareTo(keys.get(b)));
+        
+        // Reject the keys already indexed or repeated, walking both key orders together.
+        List<Record> existing = primaryIndex.inOrderTraversal();
+        List<KeyWrapper> existingKeys = new ArrayList<>(existing.size());
+        for (Record record : existing) {
+            existingKeys.add(keyOf(record));
+        }
+        boolean[] rejected = new boolean[valid.size()];
+        KeyWrapper previous = null;
+        int e = 0;
+        for (int i : order) {
+            KeyWrapper key = keys.get(i);
+            while (e < existingKeys.size() && existingKeys.get(e).compareTo(key) < 0) {
+                e++;
+            }
+            if ((previous != null && previous.compareTo(key) == 0)
+                    || (e < existingKeys.size() && existingKeys.get(e).compareTo(key) == 0)) {
+                rejected[i] = true;
+            } else {
+                previous = key;
+            }
+        }
+        
+        Record[] stored = new Record[valid.size()];
+        int inserted = 0;
+        for (int i = 0; i < stored.length; i++) {
+            if (rejected[i]) {
+                System.out.println("Error: Duplicate primary key value: " + keys.get(i));
+                continue;
+            }
+            stored[i] = append(valid.get(i));
+            indexSecondary(stored[i], records.size() - 1);
+            inserted++;
+        }
+        
+        List<KeyWrapper> mergedKeys = new ArrayList<>(existing.size() + inserted);
+        List<Record> merged = new ArrayList<>(existing.size() + inserted);
+        e = 0;
+        for (int i : order) {
+            if (rejected[i]) {
+                continue;
+            }
+            while (e < existingKeys.size() && existingKeys.get(e).compareTo(keys.get(i)) < 0) {
+                mergedKeys.add(existingKeys.get(e));
+                merged.add(existing.get(e++));
+            }
+            mergedKeys.add(keys.get(i));
+            merged.add(stored[i]);
+        }
+        mergedKeys.addAll(existingKeys.subList(e, existingKeys.size()));
+        merged.addAll(existing.subList(e, existing.size()));
+        primaryIndex.load(mergedKeys, merged);
+        modified |= inserted > 0;
+        changes += inserted;
+        return inserted;
+    }
+    
+    /**
+     * Builds the primary-key index in bulk from stored records, sorting them by key unless they
+     * already come in key order.
+     */
+    private void loadPrimaryIndex(List<Record> stored) {
+        List<KeyWrapper> keys = new ArrayList<>(stored.size());
+        boolean sorted = true;
+        for (Record record : stored) {
+            KeyWrapper key = keyOf(record);
+            sorted &= keys.isEmpty() || keys.get(keys.size() - 1).compareTo(key) < 0;
+            keys.add(key);
+        }
+        if (!sorted) {
+            Integer[] order = new Integer[keys.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> keys.get(a).compareTo(keys.get(b)));
+            List<KeyWrapper> sortedKeys = new ArrayList<>(order.length);
+            List<Record> sortedRecords = new ArrayList<>(order.length);
+            for (int i : order) {
+                sortedKeys.add(keys.get(i));
+                sortedRecords.add(stored.get(i));
+            }
+            primaryIndex.load(sortedKeys, sortedRecords);
+            return;
+        }
+        primaryIndex.load(keys, stored);
+    }
+    
+    /**
+     * Adds a validated record to the table's storage and returns the stored record: the record
+     * itself, or with column storage the lasting view of the row its values were copied into
+     * (only created when an index needs one to hold).
+     */
+    private Record append(Record record) {
+        if (columns != null) {
+            int row = columns.add(record.getValues());
+            return primaryIndex != null || holdsRecords() ? columns.row(row) : null;
+        }
+        records.add(record);
+        return record;
+    }
+    
+    /**
+     * Looks up the record with the given primary key value through the primary-key index.
+     * Returns null if there is no such record, no single-attribute primary key, or the value is
+     * not a valid key.
+     */
+    public Record findByKey(Object keyValue) {
+        if (keyColumns.length != 1 || keyValue == null) {
+            return null;
+        }
+        try {
+            if (mapped != null) {
+                KeyWrapper key = keyFor(keyValue);
+                int rank = mappedRank(key, true);
+                if (rank < mapped.getRowCount() && mappedKey(rank).compareTo(key) == 0) {
+                    return mapped.row(mapped.rowInKeyOrder(rank));
+                }
+                return null;
+            }
+            return primaryIndex.search(keyFor(keyValue));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Whether equality lookups on the given column can go through an index: the primary key (or
+     * the leading attribute of a composite one), or a column with a secondary tree or hash index.
+     */
+    public boolean hasIndex(int column) {
+        return (column == primaryKeyIndex && column >= 0) || indexOn(column) != null;
+    }
+    
+    /**
+     * Returns the index on a non-key column best suited to equality lookups of single values
+     * (a hash index if there is one, bitmaps aside), or null if the column has none.
+     */
+    private SecondaryIndex indexOn(int column) {
+        SecondaryIndex found = null;
+        for (SecondaryIndex index : getSecondaryIndexes()) {
+            if (index.getType() == IndexType.BITMAP) {
+                continue;
+            }
+            if (index.getColumn() == column && (found == null || index.getType() == IndexType.HASH)) {
+                found = index;
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * Returns a cursor over the records whose value in the given column equals the value, found
+     * through the primary-key index or a secondary index on the column (see hasIndex). A value
+     * that is not valid for the column matches nothing.
+     */
+    public Iterator<Record> lookup(int column, Object value) {
+        if (column == primaryKeyIndex && keyColumns.length == 1) {
+            Record match = findByKey(value);
+            return match == null ? Collections.<Record>emptyIterator() : Collections.singletonList(match).iterator();
+        }
+        SecondaryIndex index = indexOn(column);
+        if (index == null && column != primaryKeyIndex) {
+            throw new IllegalArgumentException("No index on attribute " + attributes.get(column).getName());
+        }
+        KeyRange point = new KeyRange();
+        try {
+            Object key = convertValue(value, attributes.get(column).getDataType());
+            if (key == null) {
+                return Collections.emptyIterator();
+            }
+            point.tightenLow(new KeyWrapper(key), true);
+            point.tightenHigh(new KeyWrapper(key), true);
+        } catch (NumberFormatException e) {
+            return Collections.emptyIterator();
+        }
+        if (index == null) {
+            // The leading attribute of a composite key: every key with that prefix.
+            return keyScan(prefixRange(Collections.singletonList(point.low.key), null));
+        }
+        return built(index).lookup(point);
+    }
+    
+    /**
+     * Describes the index lookup() probes for a column, as shown by EXPLAIN.
+     */
+    public String describeLookup(int column) {
+        String name = attributes.get(column).getName();
+        if (column == primaryKeyIndex && keyColumns.length == 1) {
+            return "primary key lookup on " + name;
+        }
+        SecondaryIndex index = indexOn(column);
+        if (index == null) {
+            return "primary key range scan on " + name;
+        }
+        return "index " + index.getName() + " (" + index.getType() + ") lookup on " + name;
+    }
+    
+    /**
+     * Gathers the statistics of the table's rows (see Statistics) from a full pass over them.
+     */
+    public Statistics analyze() {
+        statistics = new Statistics(readRecords(), attributes.size());
+        changes = 0;
+        return statistics;
+    }
+    
+    /**
+     * Returns the statistics of the table's rows, gathering them again first if they are
+     * missing or more than a fifth of the rows changed since they were gathered.
+     */
+    public Statistics getStatistics() {
+        if (statistics == null || changes > STALE_STATISTICS * statistics.getRowCount()) {
+            analyze();
+        }
+        return statistics;
+    }
+    
+    /**
+     * Estimates how many rows of the table satisfy a compiled condition (null keeps every row).
+     * The estimate is at least one row for a table that has any.
+     */
+    public double estimateRows(Condition condition) {
+        int rows = getRowCount();
+        if (condition == null || rows == 0) {
+            return rows;
+        }
+        return Math.max(1, rows * getStatistics().selectivity(condition));
+    }
+    
+    /**
+     * Retrieves records that match the given condition.
+     * If the table has a primary-key index, records come back in key order, and primary-key
+     * equality or range terms in the condition are answered from the index instead of a full scan.
+     */
+    public List<Record> select(String condition) {
+        if (condition == null || condition.trim().isEmpty()) {
+            return select((Condition) null);
+        }
+        Condition compiled;
+        try {
+            compiled = compileCondition(condition, attributes);
+        } catch (Exception e) {
+            System.out.println("Error parsing condition: " + e.getMessage());
+            return new ArrayList<>();
+        }
+        return select(compiled);
+    }
+    
+    /**
+     * Retrieves records that match an already compiled condition (null matches every record).
+     */
+    public List<Record> select(Condition condition) {
+        if (condition == null && mapped == null) {
+            return primaryIndex != null ? primaryIndex.inOrderTraversal() : collect(liveRecords());
+        }
+        List<Record> result = new ArrayList<>();
+        Iterator<Record> candidates = scan(condition);
+        Condition residual = residual(condition);
+        while (candidates.hasNext()) {
+            Record record = candidates.next();
+            if (residual == null || matchesCondition(record, residual)) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Whether scan() returns the records for the condition in primary-key order, which is
+     * ascending order of the primary key attribute (the leading one of a composite key).
+     */
+    public boolean scansInKeyOrder(Condition condition) {
+        if (primaryKeyIndex < 0) {
+            return false;
+        }
+        AccessPath path = accessPath(condition);
+        return path == null || (path != AccessPath.BITMAPS && path.index == null);
+    }
+    
+    /**
+     * Returns a cursor over the records that may satisfy the condition, without evaluating it.
+     * The access path is a point lookup or range cursor on the primary-key index or a secondary
+     * index when the condition bounds its column, the rows picked by the bitmap indexes (in
+     * storage order), or otherwise every record (in key order if the table is indexed). A null
+     * condition scans the whole table.
+     */
+    public Iterator<Record> scan(Condition condition) {
+        AccessPath path = accessPath(condition);
+        if (path == AccessPath.BITMAPS) {
+            return rowsAt(bitmapRows(condition));
+        }
+        if (path != null && path.index != null) {
+            return built(path.index).lookup(path.range);
+        }
+        if (mapped != null) {
+            return mappedScan(path == null ? null : path.range);
+        }
+        if (primaryIndex == null) {
+            return liveRecords();
+        }
+        if (path == null) {
+            return primaryIndex.cursor();
+        }
+        return keyScan(path.range);
+    }
+    
+    /**
+     * Returns a cursor over the records whose primary key lies in the range, in key order.
+     */
+    private Iterator<Record> keyScan(KeyRange range) {
+        if (mapped != null) {
+            return mappedScan(range);
+        }
+        if (range.isPoint()) {
+            Record match = primaryIndex.search(range.low);
+            return match == null ? Collections.<Record>emptyIterator() : Collections.singletonList(match).iterator();
+        }
+        return primaryIndex.range(range.low, range.lowInclusive, range.high, range.highInclusive);
+    }
+    
+    /**
+     * Access paths of a mapped table: the stored key order replaces the primary-key index, and
+     * key bounds are found by binary search over it.
+     */
+    private Iterator<Record> mappedScan(KeyRange range) {
+        StateFile.MappedTable file = mapped;
+        boolean keyOrder = primaryKeyIndex >= 0 && file.hasKeyOrder();
+        int from = 0, to = file.getRowCount();
+        if (range != null) {
+            if (range.low != null) {
+                from = mappedRank(range.low, range.lowInclusive);
+            }
+            if (range.high != null) {
+                to = mappedRank(range.high, !range.highInclusive);
+            }
+        }
+        int first = from, end = to;
+        return new Iterator<Record>() {
+            private int next = first;
+            
+            @Override
+            public boolean hasNext() {
+                return next < end;
+            }
+            
+            @Override
+            public Record next() {
+                if (next >= end) {
+                    throw new NoSuchElementException();
+                }
+                int rank = next++;
+                return file.row(keyOrder ? file.rowInKeyOrder(rank) : rank);
+            }
+        };
+    }
+    
+    /**
+     * Returns the first position in the mapped key order whose key is greater than the given
+     * one, or greater than or equal to it if orEqual is set.
+     */
+    private int mappedRank(KeyWrapper key, boolean orEqual) {
+        int low = 0, high = mapped.getRowCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = mappedKey(mid).compareTo(key);
+            if (cmp > 0 || (cmp == 0 && orEqual)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+    
+    private KeyWrapper mappedKey(int rank) {
+        int row = mapped.rowInKeyOrder(rank);
+        if (keyColumns.length == 1) {
+            return new KeyWrapper(mapped.getValue(row, primaryKeyIndex));
+        }
+        Object[] values = new Object[keyColumns.length];
+        for (int k = 0; k < values.length; k++) {
+            values[k] = mapped.getValue(row, keyColumns[k]);
+        }
+        return new KeyWrapper(new CompositeKey(values, (byte) 0));
+    }
+    
+    /**
+     * Returns the part of a condition that scan() does not already guarantee: when an index (or
+     * the stored key order) answers the bounds on its columns, the AND terms that set them are
+     * dropped and only the others are left to evaluate per record. Returns null if none remain.
+     */
+    public Condition residual(Condition condition) {
+        AccessPath path = accessPath(condition);
+        if (path == null) {
+            return condition;
+        }
+        List<Condition> remaining = new ArrayList<>();
+        for (Condition conjunct : conjuncts(condition)) {
+            boolean answered = path == AccessPath.BITMAPS && bitmapExact(conjunct);
+            for (int k = 0; path != AccessPath.BITMAPS && k < path.columns.length && !answered; k++) {
+                answered = isBound(conjunct, path.columns[k]);
+            }
+            if (!answered) {
+                remaining.add(conjunct);
+            }
+        }
+        return allOf(remaining);
+    }
+    
+    /**
+     * Describes the access path scan() takes for a condition, for EXPLAIN: the index it reads
+     * and the attributes whose bounds that index answers, or a full scan.
+     */
+    public String describeAccess(Condition condition) {
+        AccessPath path = accessPath(condition);
+        if (path == null) {
+            return "full scan";
+        }
+        if (path == AccessPath.BITMAPS) {
+            return "bitmap index scan";
+        }
+        List<String> bound = new ArrayList<>();
+        for (int column : path.columns) {
+            bound.add(attributes.get(column).getName());
+        }
+        String kind = (path.range.isPoint() ? "lookup on " : "range scan on ") + String.join(", ", bound);
+        if (path.index == null) {
+            return "primary key " + kind;
+        }
+        return "index " + path.index.getName() + " (" + path.index.getType() + ") " + kind;
+    }
+    
+    /**
+     * Picks the index scan() reads for a condition, or null to read every record. A point lookup
+     * is preferred to the bitmap indexes, and these to a range; among lookups of the same kind
+     * the primary key is preferred to a secondary index. Hash indexes only serve point lookups.
+     */
+    private AccessPath accessPath(Condition condition) {
+        if (condition == null) {
+            return null;
+        }
+        AccessPath best = null;
+        boolean keyAccess = mapped != null ? primaryKeyIndex >= 0 && mapped.hasKeyOrder() : primaryIndex != null;
+        if (keyAccess) {
+            best = keyPath(condition);
+        }
+        for (SecondaryIndex index : getSecondaryIndexes()) {
+            if (best != null && best.range.isPoint()) {
                 break;
             }
+            if (index.getType() == IndexType.BITMAP) {
+                continue;
+            }
+            KeyRange range = keyRange(condition, index.getColumn());
+            if (range != null && !range.isPoint() && index.getType() == IndexType.HASH) {
+                continue;
+            }
+            if (range != null && (best == null || range.isPoint())) {
+                best = new AccessPath(new int[] { index.getColumn() }, index, range);
+            }
         }
+        if ((best == null || !best.range.isPoint()) && bitmapUsable(condition)) {
+            return AccessPath.BITMAPS;
+        }
+        return best;
     }
     
-    public String getName() {
-        return name;
+    /**
+     * Returns the primary-key access path of a condition, or null if it does not bound the key.
+     * A composite key is bounded by equalities on its leading attributes, possibly followed by a
+     * range on the next one; bounds on the attributes after that are left to the residual.
+     */
+    private AccessPath keyPath(Condition condition) {
+        if (keyColumns.length == 1) {
+            KeyRange range = keyRange(condition, primaryKeyIndex);
+            return range == null ? null : new AccessPath(keyColumns, null, range);
+        }
+        List<Object> prefix = new ArrayList<>();
+        for (int k = 0; k < keyColumns.length; k++) {
+            KeyRange range = keyRange(condition, keyColumns[k]);
+            if (range == null) {
+                return k == 0 ? null : new AccessPath(Arrays.copyOf(keyColumns, k), null, prefixRange(prefix, null));
+            }
+            if (!range.isPoint()) {
+                return new AccessPath(Arrays.copyOf(keyColumns, k + 1), null, prefixRange(prefix, range));
+            }
+            prefix.add(range.low.key);
+        }
+        return new AccessPath(keyColumns, null, prefixRange(prefix, null));
     }
     
-    public List<Attribute> getAttributes() {
-        return attributes;
+    /**
+     * Returns the range of composite keys starting with the given values and, if next is given,
+     * whose following value lies within it. The bounds are shorter keys placed before or after
+     * every key they prefix, so they never equal a stored key.
+     */
+    private KeyRange prefixRange(List<Object> prefix, KeyRange next) {
+        KeyRange range = new KeyRange();
+        if (next == null && prefix.size() == keyColumns.length) {
+            range.low = range.high = new KeyWrapper(new CompositeKey(prefix.toArray(), (byte) 0));
+            return range;
+        }
+        range.low = bound(prefix, next == null ? null : next.low, next == null || next.lowInclusive
+                ? CompositeKey.BEFORE : CompositeKey.AFTER);
+        range.high = bound(prefix, next == null ? null : next.high, next == null || next.highInclusive
+                ? CompositeKey.AFTER : CompositeKey.BEFORE);
+        return range;
     }
     
-    public List<Record> getRecords() {
-        return records;
+    /**
+     * Returns the prefix followed by the value of an optional single-attribute bound, as a
+     * composite key bound with the given bias, or null (open) if both are empty.
+     */
+    private static KeyWrapper bound(List<Object> prefix, KeyWrapper value, byte bias) {
+        if (prefix.isEmpty() && value == null) {
+            return null;
+        }
+        Object[] values = prefix.toArray(new Object[prefix.size() + (value == null ? 0 : 1)]);
+        if (value != null) {
+            values[prefix.size()] = value.key;
+        }
+        return new KeyWrapper(new CompositeKey(values, bias));
     }
     
-    public String getPrimaryKey() {
-        return primaryKey;
+    /**
+     * Returns the bitmap index on a column, or null if it has none.
+     */
+    private SecondaryIndex bitmapOn(int column) {
+        for (SecondaryIndex index : getSecondaryIndexes()) {
+            if (index.getColumn() == column && index.getType() == IndexType.BITMAP) {
+                return index;
+            }
+        }
+        return null;
     }
     
-    public BinarySearchTree<KeyWrapper, Record> getBstIndex() {
-        return bstIndex;
+    /**
+     * Whether the bitmap indexes give exactly the rows satisfying the condition: every term
+     * compares a bitmap-indexed column with a constant, combined with AND, OR and NOT.
+     */
+    private boolean bitmapExact(Condition condition) {
+        if (condition instanceof SimpleCondition) {
+            SimpleCondition term = (SimpleCondition) condition;
+            return !term.rightIsAttr && term.rightValue != null && bitmapOn(term.leftIndex) != null;
+        }
+        if (condition instanceof CompoundCondition) {
+            CompoundCondition compound = (CompoundCondition) condition;
+            return bitmapExact(compound.left) && bitmapExact(compound.right);
+        }
+        if (condition instanceof NotCondition) {
+            return bitmapExact(((NotCondition) condition).inner);
+        }
+        return false;
     }
     
     /**
-     * Validates a record against the table's schema.
-     * Checks that:
-     *  - The number of values equals the number of attributes.
-     *  - Each value conforms to the attribute's domain.
-     *  - For a primary key attribute, the value is not null or empty.
+     * Whether the bitmap indexes narrow the condition down to a set of candidate rows, i.e.
+     * bitmapRows() does not return null.
      */
-    private boolean validateRecord(Record record) {
-        if (record.getValues().size() != attributes.size()) {
-            System.out.println("Error: Number of values does not match table schema.");
-            return false;
-        }
-        for (int i = 0; i < attributes.size(); i++) {
-            Attribute attr = attributes.get(i);
-            Object value = record.getValue(i);
-            
-            // Entity Integrity: Primary key must not be null or blank.
-            if (attr.isPrimaryKey()) {
-                if (value == null || value.toString().trim().isEmpty()) {
-                    System.out.println("Error: Primary key attribute '" + attr.getName() + "' cannot be null or empty.");
-                    return false;
-                }
-            }
-            
-            // Domain Constraints
-            if (attr.getDataType() == Attribute.DataType.INTEGER) {
-                try {
-                    Integer.parseInt(value.toString());
-                } catch (NumberFormatException e) {
-                    System.out.println("Error: Value for attribute '" + attr.getName() + "' is not a valid integer.");
-                    return false;
-                }
-            } else if (attr.getDataType() == Attribute.DataType.FLOAT) {
-                try {
-                    Double.parseDouble(value.toString());
-                } catch (NumberFormatException e) {
-                    System.out.println("Error: Value for attribute '" + attr.getName() + "' is not a valid float.");
-                    return false;
-                }
-            } else if (attr.getDataType() == Attribute.DataType.TEXT) {
-                String text = value.toString();
-                if (text.length() > 100) {
-                    System.out.println("Error: Value for attribute '" + attr.getName() + "' exceeds 100 characters.");
-                    return false;
-                }
+    private boolean bitmapUsable(Condition condition) {
+        if (condition instanceof CompoundCondition) {
+            CompoundCondition compound = (CompoundCondition) condition;
+            if (compound.logicalOperator.equalsIgnoreCase("AND")) {
+                return bitmapUsable(compound.left) || bitmapUsable(compound.right);
             }
+            return bitmapUsable(compound.left) && bitmapUsable(compound.right);
         }
-        return true;
+        return bitmapExact(condition);
     }
     
     /**
-     * Inserts a record into the table.
-     * Validates the record (domain and entity constraints) and checks for duplicate primary key values.
+     * Evaluates a condition with bitwise operations on the bitmap indexes, before any record is
+     * read. Returns the rows that may satisfy it (exactly those if bitmapExact() holds), or null
+     * if the bitmaps cannot narrow it down. Terms the bitmaps cannot answer are left out of an
+     * AND, so they still have to be checked on each row.
      */
-    public boolean insert(Record record) {
-        if (!validateRecord(record)) {
-            return false;
+    private CompressedBitmap bitmapRows(Condition condition) {
+        if (condition instanceof SimpleCondition) {
+            if (!bitmapExact(condition)) {
+                return null;
+            }
+            SimpleCondition term = (SimpleCondition) condition;
+            return built(bitmapOn(term.leftIndex)).matching(term.operator, term.rightValue);
         }
-        
-        if (primaryKey != null && bstIndex != null) {
-            int pkIndex = -1;
-            for (int i = 0; i < attributes.size(); i++) {
-                if (attributes.get(i).getName().equalsIgnoreCase(primaryKey)) {
-                    pkIndex = i;
-                    break;
+        if (condition instanceof CompoundCondition) {
+            CompoundCondition compound = (CompoundCondition) condition;
+            CompressedBitmap left = bitmapRows(compound.left);
+            CompressedBitmap right = bitmapRows(compound.right);
+            if (compound.logicalOperator.equalsIgnoreCase("AND")) {
+                if (left == null || right == null) {
+                    return left == null ? right : left;
                 }
+                return CompressedBitmap.and(left, right);
             }
-            if (pkIndex == -1) {
-                System.out.println("Primary key attribute not found in schema.");
-                return false;
+            if (compound.logicalOperator.equalsIgnoreCase("OR") && left != null && right != null) {
+                return CompressedBitmap.or(left, right);
             }
-            Object keyValue = record.getValue(pkIndex);
-            if (!(keyValue instanceof Comparable)) {
-                System.out.println("Primary key value is not comparable.");
-                return false;
+            return null;
+        }
+        if (condition instanceof NotCondition && bitmapExact(condition)) {
+            return CompressedBitmap.andNot(liveRows(), bitmapRows(((NotCondition) condition).inner));
+        }
+        return null;
+    }
+    
+    /**
+     * Returns the positions of the rows not deleted.
+     */
+    private CompressedBitmap liveRows() {
+        CompressedBitmap rows = CompressedBitmap.range(mapped != null ? mapped.getRowCount() : records.size());
+        for (int row = deadCount == 0 ? -1 : tombstones.nextSetBit(0); row >= 0; row = tombstones.nextSetBit(row + 1)) {
+            rows.remove(row);
+        }
+        return rows;
+    }
+    
+    /**
+     * Iterates over the records at the given row positions, in position order.
+     */
+    private Iterator<Record> rowsAt(CompressedBitmap rows) {
+        List<Record> all = mapped != null ? readRecords() : records;
+        return new Iterator<Record>() {
+            private int next = rows.nextSetBit(0);
+            
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
             }
-            KeyWrapper wrappedKey = new KeyWrapper(keyValue);
-            // Check for duplicate key.
-            Record existingRecord = bstIndex.search(wrappedKey);
-            if (existingRecord != null) {
-                System.out.println("Error: Duplicate primary key value: " + keyValue);
-                return false;
+            
+            @Override
+            public Record next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                Record record = all.get(next);
+                next = rows.nextSetBit(next + 1);
+                return record;
             }
-            bstIndex.insert(wrappedKey, record);
-        }
-        records.add(record);
-        System.out.println("Record inserted into table '" + name + "'.");
-        return true;
+        };
     }
     
     /**
-     * Retrieves records that match the given condition.
-     * If the table has a primary key with a BST index, records are retrieved via an in-order traversal.
+     * Whether a term has the form "column op constant" with an operator keyRange() uses.
      */
-    public List<Record> select(String condition) {
-        List<Record> result = new ArrayList<>();
-        List<Record> searchList;
-        if (primaryKey != null && bstIndex != null) {
-            searchList = bstIndex.inOrderTraversal();
-        } else {
-            searchList = records;
+    private boolean isBound(Condition term, int column) {
+        if (!(term instanceof SimpleCondition)) {
+            return false;
         }
-        if (condition == null || condition.trim().isEmpty()) {
-            return new ArrayList<>(searchList);
+        SimpleCondition simple = (SimpleCondition) term;
+        if (simple.rightIsAttr || simple.leftIndex != column || simple.rightValue == null) {
+            return false;
         }
-        for (Record record : searchList) {
-            if (recordMatchesCondition(record, condition)) {
-                result.add(record);
+        switch (simple.operator) {
+            case "=":
+            case "==":
+            case ">":
+            case ">=":
+            case "<":
+            case "<=":
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * Derives the bounds on a column implied by the top-level AND terms of the form
+     * "column op constant". Returns null if the condition does not restrict the column.
+     */
+    private KeyRange keyRange(Condition condition, int column) {
+        KeyRange range = null;
+        for (Condition conjunct : conjuncts(condition)) {
+            if (!isBound(conjunct, column)) {
+                continue;
+            }
+            SimpleCondition term = (SimpleCondition) conjunct;
+            KeyWrapper key = new KeyWrapper(term.rightValue);
+            if (range == null) {
+                range = new KeyRange();
+            }
+            switch (term.operator) {
+                case "=":
+                case "==":
+                    range.tightenLow(key, true);
+                    range.tightenHigh(key, true);
+                    break;
+                case ">":
+                    range.tightenLow(key, false);
+                    break;
+                case ">=":
+                    range.tightenLow(key, true);
+                    break;
+                case "<":
+                    range.tightenHigh(key, false);
+                    break;
+                default:
+                    range.tightenHigh(key, true);
+                    break;
             }
         }
-        return result;
+        return range;
     }
     
     /**
@@ -168,10 +1351,59 @@ public class Table implements Serializable {
         return recordMatchesCondition(record, condition);
     }
     
+    /**
+     * Public helper to check if a record matches an already compiled condition.
+     */
+    public boolean matchesCondition(Record record, Condition condition) {
+        try {
+            return condition.evaluate(record, attributes);
+        } catch (Exception e) {
+            System.out.println("Error parsing condition: " + e.getMessage());
+            return false;
+        }
+    }
+    
     // ----------------- Advanced Condition Parsing -----------------
     
+    // Compiled conditions keyed by schema signature and condition text, in least-recently-used order.
+    private static final int CONDITION_CACHE_SIZE = 256;
+    private static final Map<String, Condition> conditionCache =
+            new LinkedHashMap<String, Condition>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Condition> eldest) {
+                    return size() > CONDITION_CACHE_SIZE;
+                }
+            };
+    
+    /**
+     * Compiles a condition string against the given schema once, so callers can evaluate the
+     * resulting Condition across a whole scan. Compiled trees are cached per condition text and
+     * schema (attribute names and types), so repeated statements skip parsing entirely.
+     */
+    public static Condition compileCondition(String condStr, List<Attribute> schema) {
+        StringBuilder cacheKey = new StringBuilder();
+        for (Attribute attr : schema) {
+            cacheKey.append(attr.getName()).append(':').append(attr.getDataType()).append(',');
+        }
+        cacheKey.append('|').append(condStr.trim());
+        String key = cacheKey.toString();
+        synchronized (conditionCache) {
+            Condition cached = conditionCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Condition compiled = parseCondition(condStr, schema);
+        synchronized (conditionCache) {
+            conditionCache.put(key, compiled);
+        }
+        return compiled;
+    }
+    
     /**
-     * Parses a condition string (which may be compound using AND/OR and optionally enclosed in parentheses)
+     * Parses a condition string (which may be compound using AND/OR/NOT and optionally enclosed in parentheses)
      * against the given schema, and returns a Condition object.
      */
     public static Condition parseCondition(String condStr, List<Attribute> schema) {
@@ -242,7 +1474,13 @@ public class Table implements Serializable {
             return c;
         }
     
-        // 4) simple “attr op const”
+        // 4) NOT applies to the rest of the term
+        if (condStr.regionMatches(true, 0, "NOT", 0, 3) && condStr.length() > 3
+                && (condStr.charAt(3) == ' ' || condStr.charAt(3) == '(')) {
+            return new NotCondition(parseCondition(condStr.substring(3).trim(), schema));
+        }
+    
+        // 5) simple “attr op const”
         String[] tok = condStr.split("\\s+", 3);
         if (tok.length != 3) {
             throw new IllegalArgumentException("Invalid condition: " + condStr);
@@ -251,12 +1489,140 @@ public class Table implements Serializable {
     }
     
 
+    /**
+     * Splits a compiled condition into its top-level AND terms; OR subtrees stay whole.
+     */
+    public static List<Condition> conjuncts(Condition condition) {
+        List<Condition> terms = new ArrayList<>();
+        List<Condition> stack = new ArrayList<>();
+        stack.add(condition);
+        while (!stack.isEmpty()) {
+            Condition c = stack.remove(stack.size() - 1);
+            if (c instanceof CompoundCondition && ((CompoundCondition) c).logicalOperator.equalsIgnoreCase("AND")) {
+                stack.add(((CompoundCondition) c).right);
+                stack.add(((CompoundCondition) c).left);
+            } else {
+                terms.add(c);
+            }
+        }
+        return terms;
+    }
+    
+    /**
+     * Combines conditions with AND; returns null for an empty list.
+     */
+    public static Condition allOf(List<Condition> conditions) {
+        Condition combined = null;
+        for (Condition c : conditions) {
+            combined = combined == null ? c : new CompoundCondition(combined, "AND", c);
+        }
+        return combined;
+    }
+    
+    /**
+     * Returns the compiled condition with every attribute position p replaced by position[p],
+     * for evaluating it on rows whose columns are laid out in another order.
+     */
+    public static Condition remap(Condition condition, int[] position) {
+        if (condition instanceof SimpleCondition) {
+            return new SimpleCondition((SimpleCondition) condition, position);
+        }
+        if (condition instanceof CompoundCondition) {
+            CompoundCondition compound = (CompoundCondition) condition;
+            return new CompoundCondition(remap(compound.left, position), compound.logicalOperator,
+                    remap(compound.right, position));
+        }
+        if (condition instanceof NotCondition) {
+            return new NotCondition(remap(((NotCondition) condition).inner, position));
+        }
+        return condition;
+    }
+    
+    /**
+     * Returns the schema positions referenced by a compiled condition.
+     */
+    public static BitSet columns(Condition condition) {
+        BitSet referenced = new BitSet();
+        List<Condition> stack = new ArrayList<>();
+        stack.add(condition);
+        while (!stack.isEmpty()) {
+            Condition c = stack.remove(stack.size() - 1);
+            if (c instanceof SimpleCondition) {
+                SimpleCondition term = (SimpleCondition) c;
+                referenced.set(term.leftIndex);
+                if (term.rightIsAttr) {
+                    referenced.set(term.rightIndex);
+                }
+            } else if (c instanceof CompoundCondition) {
+                stack.add(((CompoundCondition) c).left);
+                stack.add(((CompoundCondition) c).right);
+            } else if (c instanceof NotCondition) {
+                stack.add(((NotCondition) c).inner);
+            }
+        }
+        return referenced;
+    }
+    
+    /**
+     * If the condition is an equality between two attributes, returns their schema positions
+     * as {left, right}; otherwise returns null.
+     */
+    public static int[] equalityColumns(Condition condition) {
+        if (condition instanceof SimpleCondition) {
+            SimpleCondition term = (SimpleCondition) condition;
+            if (term.rightIsAttr && (term.operator.equals("=") || term.operator.equals("=="))) {
+                return new int[] { term.leftIndex, term.rightIndex };
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * If a compiled condition compares two attributes with <, <=, > or >=, returns
+     * {left position, right position}; otherwise null. See comparisonOperator().
+     */
+    public static int[] inequalityColumns(Condition condition) {
+        if (condition instanceof SimpleCondition) {
+            SimpleCondition term = (SimpleCondition) condition;
+            if (term.rightIsAttr && term.operator.matches("[<>]=?")) {
+                return new int[] { term.leftIndex, term.rightIndex };
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Returns the operator of a single comparison, or null for a compound condition.
+     */
+    public static String comparisonOperator(Condition condition) {
+        return condition instanceof SimpleCondition ? ((SimpleCondition) condition).operator : null;
+    }
+    
+    /**
+     * Returns the highest schema position referenced by a compiled condition, which tells a
+     * join how many columns must be present before the condition can be evaluated.
+     */
+    public static int maxColumn(Condition condition) {
+        if (condition instanceof SimpleCondition) {
+            SimpleCondition term = (SimpleCondition) condition;
+            return term.rightIsAttr ? Math.max(term.leftIndex, term.rightIndex) : term.leftIndex;
+        }
+        if (condition instanceof CompoundCondition) {
+            CompoundCondition compound = (CompoundCondition) condition;
+            return Math.max(maxColumn(compound.left), maxColumn(compound.right));
+        }
+        if (condition instanceof NotCondition) {
+            return maxColumn(((NotCondition) condition).inner);
+        }
+        return Integer.MAX_VALUE;
+    }
+
     /**
      * Evaluates whether a record satisfies the condition string.
      */
     private boolean recordMatchesCondition(Record record, String conditionStr) {
         try {
-            Condition condition = Table.parseCondition(conditionStr, this.attributes);
+            Condition condition = Table.compileCondition(conditionStr, this.attributes);
             return condition.evaluate(record, this.attributes);
         } catch (Exception e) {
             System.out.println("Error parsing condition: " + e.getMessage());
@@ -272,6 +1638,7 @@ public class Table implements Serializable {
         private final String leftAttr, operator, rightToken;
         private final boolean rightIsAttr;
         private final int leftIndex, rightIndex;     // if rightIsAttr
+        private final Object rightValue;             // constant converted to the left attribute's type
     
         public SimpleCondition(String leftAttr, String operator, String rightToken, List<Attribute> schema) {
             this.leftAttr   = leftAttr;
@@ -321,41 +1688,41 @@ public class Table implements Serializable {
             }
             this.rightIsAttr = ri >= 0;
             this.rightIndex  = ri;
+            // Parse a constant operand once, at compile time.
+            this.rightValue = rightIsAttr ? null : convertValue(rightToken, schema.get(li).getDataType());
+        }
+    
+        /**
+         * Copies a comparison, moving the attributes it references to new positions.
+         */
+        SimpleCondition(SimpleCondition term, int[] position) {
+            this.leftAttr   = term.leftAttr;
+            this.operator   = term.operator;
+            this.rightToken = term.rightToken;
+            this.leftIndex  = position[term.leftIndex];
+            this.rightIsAttr = term.rightIsAttr;
+            this.rightIndex = term.rightIsAttr ? position[term.rightIndex] : term.rightIndex;
+            this.rightValue = term.rightValue;
         }
     
         @Override
         public boolean evaluate(Record record, List<Attribute> schema) {
-            Attribute attr = schema.get(leftIndex);
-            // always pull raw strings
-            String leftRaw  = record.getValue(leftIndex).toString();
-            String rightRaw = rightIsAttr
-                ? record.getValue(rightIndex).toString()
-                : rightToken;
-    
-            switch (attr.getDataType()) {
-                case INTEGER:
-                    int lInt = Integer.parseInt(leftRaw);
-                    int rInt = Integer.parseInt(rightRaw);
-                    return Table.compareInts(lInt, operator, rInt);
-    
-                case FLOAT:
-                    double lDbl = Double.parseDouble(leftRaw);
-                    double rDbl = Double.parseDouble(rightRaw);
-                    return Table.compareDoubles(lDbl, operator, rDbl);
-    
-                case TEXT:
-                    return Table.compareStrings(leftRaw, operator, rightRaw);
+            Object left  = record.getValue(leftIndex);
+            Object right = rightIsAttr ? record.getValue(rightIndex) : rightValue;
+            return Table.compareValues(left, operator, right);
+        }
     
-                default:
-                    return false;
-            }
+        @Override
+        public String toString() {
+            boolean quoted = !rightIsAttr && rightValue instanceof String;
+            return leftAttr + " " + operator + " " + (quoted ? "\"" + rightToken + "\"" : rightToken);
         }
     }
 
     private static class CompoundCondition implements Condition {
-        private Condition left;
-        private String logicalOperator; // "AND" or "OR"
-        private Condition right;
+        private final Condition left;
+        private final String logicalOperator; // "AND" or "OR"
+        private final Condition right;
         
         public CompoundCondition(Condition left, String logicalOperator, Condition right) {
             this.left = left;
@@ -373,105 +1740,381 @@ public class Table implements Serializable {
                 return false;
             }
         }
+        
+        @Override
+        public String toString() {
+            String text = left + " " + logicalOperator.toUpperCase() + " " + right;
+            return logicalOperator.equalsIgnoreCase("OR") ? "(" + text + ")" : text;
+        }
+    }
+    private static class NotCondition implements Condition {
+        private final Condition inner;
+        
+        public NotCondition(Condition inner) {
+            this.inner = inner;
+        }
+        
+        @Override
+        public boolean evaluate(Record record, List<Attribute> attributes) {
+            return !inner.evaluate(record, attributes);
+        }
+        
+        @Override
+        public String toString() {
+            return "NOT (" + inner + ")";
+        }
     }
     // ----------------- End of Advanced Condition Parsing -----------------
     
     /**
      * Updates records in the table that satisfy the given condition.
-     * Checks that the new values satisfy domain, entity integrity, and key constraints.
+     * The new values are checked once against the domain, entity integrity and key constraints
+     * before any record changes, so an invalid statement updates nothing. Matching records are
+     * found through an index when the condition bounds its column. Changing the primary key
+     * re-keys the index entry of the (single) matching record, and secondary indexes on the
+     * assigned columns are kept up to date.
      *
      * @param condition A condition (e.g., "id = 2") to select records.
-     * @param updatedValues A Record containing new values for the update.
+     * @param updatedValues A Record containing new values for the update (null leaves an attribute unchanged).
      * @return The number of records updated.
      */
     public int update(String condition, Record updatedValues) {
-        int updatedCount = 0;
-        for (Record record : records) {
-            if (condition == null || condition.trim().isEmpty() || recordMatchesCondition(record, condition)) {
-                List<Object> currentVals = record.getValues();
-                List<Attribute> attrs = attributes;
-                List<Object> newVals = updatedValues.getValues();
-                for (int i = 0; i < newVals.size(); i++) {
-                    Object newVal = newVals.get(i);
-                    if (newVal == null) continue; // Skip if no update for this attribute.
-                    
-                    Attribute attr = attrs.get(i);
-                    
-                    // Domain Constraint Check
-                    if (attr.getDataType() == Attribute.DataType.INTEGER) {
-                        try {
-                            Integer.parseInt(newVal.toString());
-                        } catch (NumberFormatException e) {
-                            System.out.println("Error: New value for attribute '" + attr.getName() + "' is not a valid integer.");
-                            continue;
-                        }
-                    } else if (attr.getDataType() == Attribute.DataType.FLOAT) {
-                        try {
-                            Double.parseDouble(newVal.toString());
-                        } catch (NumberFormatException e) {
-                            System.out.println("Error: New value for attribute '" + attr.getName() + "' is not a valid float.");
-                            continue;
-                        }
-                    } else if (attr.getDataType() == Attribute.DataType.TEXT) {
-                        String text = newVal.toString();
-                        if (text.length() > 100) {
-                            System.out.println("Error: New value for attribute '" + attr.getName() + "' exceeds 100 characters.");
-                            continue;
-                        }
-                    }
-                    
-                    // Entity Integrity & Key Constraint Check for primary key.
-                    if (attr.isPrimaryKey()) {
-                        if (newVal == null || newVal.toString().trim().isEmpty()) {
-                            System.out.println("Error: Primary key '" + attr.getName() + "' cannot be null or empty.");
-                            continue;
-                        }
-                        KeyWrapper newKey = new KeyWrapper(newVal);
-                        Record duplicate = bstIndex.search(newKey);
-                        if (duplicate != null && duplicate != record) {
-                            System.out.println("Error: Duplicate primary key value: " + newVal);
-                            continue;
-                        }
-                        // In a full implementation, remove the old key and reinsert the new key into the BST.
+        materialize();
+        Condition compiled = null;
+        if (condition != null && !condition.trim().isEmpty()) {
+            try {
+                compiled = compileCondition(condition, attributes);
+            } catch (Exception e) {
+                System.out.println("Error parsing condition: " + e.getMessage());
+                return 0;
+            }
+        }
+        
+        // Validate and convert the new values once for the whole statement.
+        List<Object> newVals = updatedValues.getValues();
+        Object[] converted = new Object[attributes.size()];
+        for (int i = 0; i < newVals.size() && i < converted.length; i++) {
+            Object newVal = newVals.get(i);
+            if (newVal == null) continue; // Skip if no update for this attribute.
+            
+            Attribute attr = attributes.get(i);
+            
+            // Entity Integrity for the primary key.
+            if (attr.isPrimaryKey() && newVal.toString().trim().isEmpty()) {
+                System.out.println("Error: Primary key '" + attr.getName() + "' cannot be null or empty.");
+                return 0;
+            }
+            // Domain Constraint Check
+            try {
+                converted[i] = convertValue(newVal, attr.getDataType());
+            } catch (NumberFormatException e) {
+                String typeName = attr.getDataType() == Attribute.DataType.INTEGER ? "integer" : "float";
+                System.out.println("Error: New value for attribute '" + attr.getName() + "' is not a valid " + typeName + ".");
+                return 0;
+            }
+            if (attr.getDataType() == Attribute.DataType.TEXT && converted[i].toString().length() > 100) {
+                System.out.println("Error: New value for attribute '" + attr.getName() + "' exceeds 100 characters.");
+                return 0;
+            }
+        }
+        
+        // Collect the matches before changing anything, since a key change moves index entries.
+        List<Record> matches = new ArrayList<>();
+        Iterator<Record> candidates = scan(compiled);
+        Condition residual = residual(compiled);
+        while (candidates.hasNext()) {
+            Record record = candidates.next();
+            if (residual == null || matchesCondition(record, residual)) {
+                matches.add(record);
+            }
+        }
+        
+        // Key Constraint Check: the new keys must differ from each other and must not be taken by
+        // a record left unchanged.
+        KeyWrapper[] newKeys = null;
+        boolean rekey = false;
+        for (int column : keyColumns) {
+            rekey |= converted[column] != null;
+        }
+        if (rekey && primaryIndex != null && !matches.isEmpty()) {
+            newKeys = new KeyWrapper[matches.size()];
+            Set<Record> moving = Collections.newSetFromMap(new IdentityHashMap<>());
+            moving.addAll(matches);
+            java.util.TreeSet<KeyWrapper> taken = new java.util.TreeSet<>();
+            for (int m = 0; m < newKeys.length; m++) {
+                Record moved = new Record(new ArrayList<>(matches.get(m).getValues()));
+                for (int column : keyColumns) {
+                    if (converted[column] != null) {
+                        moved.setValue(column, converted[column]);
                     }
-                    
-                    currentVals.set(i, newVal);
                 }
-                updatedCount++;
+                newKeys[m] = keyOf(moved);
+                Record holder = primaryIndex.search(newKeys[m]);
+                if (!taken.add(newKeys[m]) || (holder != null && !moving.contains(holder))) {
+                    System.out.println("Error: Duplicate primary key value: " + newKeys[m]);
+                    return 0;
+                }
+            }
+        }
+        
+        // Secondary indexes on an assigned column move their entries to the new value; bitmap
+        // indexes need the row positions of the matches for that.
+        List<SecondaryIndex> rekeyed = new ArrayList<>();
+        boolean needRows = false;
+        for (SecondaryIndex index : getSecondaryIndexes()) {
+            if (index.isBuilt() && converted[index.getColumn()] != null) {
+                rekeyed.add(index);
+                needRows |= index.getType() == IndexType.BITMAP;
+            }
+        }
+        int[] rows = needRows ? positionsOf(matches) : new int[matches.size()];
+        for (int m = 0; m < matches.size(); m++) {
+            Record record = matches.get(m);
+            if (newKeys != null) {
+                primaryIndex.delete(keyOf(record));
+            }
+            for (SecondaryIndex index : rekeyed) {
+                index.remove(record, rows[m]);
+            }
+            for (int i = 0; i < converted.length; i++) {
+                if (converted[i] != null) {
+                    record.setValue(i, converted[i]);
+                }
+            }
+            if (newKeys != null) {
+                primaryIndex.insert(newKeys[m], record);
+            }
+            for (SecondaryIndex index : rekeyed) {
+                index.add(record, rows[m]);
+            }
+        }
+        if (!matches.isEmpty()) {
+            modified = true;
+        }
+        changes += matches.size();
+        System.out.println(matches.size() + " record(s) updated in table '" + name + "'.");
+        return matches.size();
+    }
+    
+    /**
+     * Returns the row positions of stored records.
+     */
+    private int[] positionsOf(List<Record> stored) {
+        int[] rows = new int[stored.size()];
+        if (columns != null) {
+            for (int m = 0; m < rows.length; m++) {
+                rows[m] = ((ColumnStore.Row) stored.get(m)).getRow();
+            }
+            return rows;
+        }
+        Map<Record, Integer> wanted = new IdentityHashMap<>();
+        for (int m = 0; m < rows.length; m++) {
+            wanted.put(stored.get(m), m);
+        }
+        for (int i = 0; i < records.size(); i++) {
+            Integer m = records.get(i) == null ? null : wanted.get(records.get(i));
+            if (m != null) {
+                rows[m] = i;
             }
         }
-        System.out.println(updatedCount + " record(s) updated in table '" + name + "'.");
-        return updatedCount;
+        return rows;
     }
     
     /**
-     * Deletes records from the table that match the given condition.
-     * If no condition is provided, deletes all records and resets the BST index.
+     * Deletes records from the table that match the given condition, removing them from the
+     * indexes. When an index bounds the condition the matches are found through it rather than
+     * by evaluating the condition on every row. If no condition is provided, deletes all records
+     * and resets the indexes.
      *
      * @param condition A string condition.
      * @return The number of records deleted.
      */
     public int delete(String condition) {
-        int initialSize = records.size();
+        materialize();
+        int initialSize = records.size() - deadCount;
         if (condition == null || condition.trim().isEmpty()) {
-            if (bstIndex != null)
-                bstIndex = new BinarySearchTree<>();
-            records.clear();
+            if (primaryIndex != null)
+                primaryIndex = newIndex();
+            for (SecondaryIndex index : getSecondaryIndexes()) {
+                index.reset();
+            }
+            if (columns != null) {
+                columns.clear();
+            } else {
+                records.clear();
+            }
+            tombstones = null;
+            deadCount = 0;
+            modified = true;
+            changes += initialSize;
             System.out.println("All records deleted from table '" + name + "'.");
             return initialSize;
         }
+        Condition compiled;
+        try {
+            compiled = compileCondition(condition, attributes);
+        } catch (Exception e) {
+            System.out.println("Error parsing condition: " + e.getMessage());
+            return 0;
+        }
+        AccessPath path = accessPath(compiled);
+        if (path == AccessPath.BITMAPS) {
+            // The bitmaps give the candidate rows by position.
+            CompressedBitmap rows = bitmapRows(compiled);
+            Condition residual = residual(compiled);
+            int deletedCount = 0;
+            for (int i = rows.nextSetBit(0); i >= 0; i = rows.nextSetBit(i + 1)) {
+                Record record = records.get(i);
+                if (!isDeleted(i) && (residual == null || matchesCondition(record, residual))) {
+                    deleteRow(i, record);
+                    deletedCount++;
+                }
+            }
+            return deleted(deletedCount);
+        }
+        // With an index access path, the matches are looked up first and their rows found by
+        // identity, as the index holds the stored records rather than their positions.
+        Set<Record> matches = null;
+        if (path != null) {
+            matches = Collections.newSetFromMap(new IdentityHashMap<>());
+            Iterator<Record> candidates = scan(compiled);
+            Condition residual = residual(compiled);
+            while (candidates.hasNext()) {
+                Record record = candidates.next();
+                if (residual == null || matchesCondition(record, residual)) {
+                    matches.add(record);
+                }
+            }
+        }
+        // Matching rows are only marked as deleted here; compact() removes them from storage
+        // together, so a delete costs one pass over the table however many rows it removes.
         int deletedCount = 0;
-        for (int i = records.size() - 1; i >= 0; i--) {
+        for (int i = 0; i < records.size() && (matches == null || deletedCount < matches.size()); i++) {
+            if (isDeleted(i)) {
+                continue;
+            }
             Record record = records.get(i);
-            if (recordMatchesCondition(record, condition)) {
-                records.remove(i);
+            if (matches != null ? matches.contains(record) : matchesCondition(record, compiled)) {
+                deleteRow(i, record);
                 deletedCount++;
             }
         }
+        return deleted(deletedCount);
+    }
+    
+    /**
+     * Removes the record at the given position from the indexes and marks its row as deleted.
+     */
+    private void deleteRow(int row, Record record) {
+        if (primaryIndex != null) {
+            primaryIndex.delete(keyOf(record));
+        }
+        unindexSecondary(record, row);
+        markDeleted(row);
+    }
+    
+    /**
+     * Finishes a delete of the given number of rows, compacting the table if enough of its rows
+     * are now deleted.
+     */
+    private int deleted(int deletedCount) {
+        if (deadCount > COMPACTION_THRESHOLD * records.size()) {
+            compact();
+        }
+        if (deletedCount > 0) {
+            modified = true;
+        }
+        changes += deletedCount;
         System.out.println(deletedCount + " record(s) deleted from table '" + name + "'.");
         return deletedCount;
     }
     
+    private boolean isDeleted(int row) {
+        return deadCount > 0 && tombstones.get(row);
+    }
+    
+    /**
+     * Marks a row as deleted. Row storage drops the record at once; column storage keeps the
+     * values until compaction.
+     */
+    private void markDeleted(int row) {
+        if (tombstones == null) {
+            tombstones = new BitSet(records.size());
+        }
+        tombstones.set(row);
+        deadCount++;
+        if (columns == null) {
+            records.set(row, null);
+        }
+    }
+    
+    /**
+     * Removes the rows marked as deleted from storage in a single pass, keeping the order of
+     * the others. Entries of indexes holding records stay valid: row storage keeps the same
+     * Record objects and column storage renumbers the views the index holds.
+     */
+    private void compact() {
+        if (deadCount == 0) {
+            return;
+        }
+        if (columns != null) {
+            columns.removeAll(tombstones);
+        } else {
+            List<Record> live = new ArrayList<>(records.size() - deadCount);
+            for (Record record : records) {
+                if (record != null) {
+                    live.add(record);
+                }
+            }
+            records = live;
+        }
+        tombstones = null;
+        deadCount = 0;
+        // Bitmap indexes address rows by position, which compaction changes.
+        for (SecondaryIndex index : getSecondaryIndexes()) {
+            if (index.getType() == IndexType.BITMAP) {
+                index.reset();
+            }
+        }
+    }
+    
+    /**
+     * Iterates over the rows in storage order, skipping deleted ones.
+     */
+    private Iterator<Record> liveRecords() {
+        if (deadCount == 0) {
+            return records.iterator();
+        }
+        List<Record> rows = records;
+        BitSet deleted = tombstones;
+        return new Iterator<Record>() {
+            private int next = deleted.nextClearBit(0);
+            
+            @Override
+            public boolean hasNext() {
+                return next < rows.size();
+            }
+            
+            @Override
+            public Record next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Record record = rows.get(next);
+                next = deleted.nextClearBit(next + 1);
+                return record;
+            }
+        };
+    }
+    
+    private static List<Record> collect(Iterator<Record> records) {
+        List<Record> result = new ArrayList<>();
+        while (records.hasNext()) {
+            result.add(records.next());
+        }
+        return result;
+    }
+    
     /**
      * Renames the attributes of the table using the provided new names.
      *
@@ -486,6 +2129,10 @@ public class Table implements Serializable {
         for (int i = 0; i < attributes.size(); i++) {
             attributes.get(i).setName(newNames.get(i));
         }
+        if (primaryKeyIndex >= 0) {
+            primaryKey = keyNames();
+        }
+        modified = true;
         System.out.println("Attributes in table '" + name + "' renamed successfully.");
         return true;
     }
@@ -493,7 +2140,531 @@ public class Table implements Serializable {
     // ----------------- Inner Classes -----------------
     
     /**
-     * A helper inner class to wrap primary key values for use in the BST.
+     * Wraps a primary key value for the index, converting it to the key attribute's type
+     * so numeric keys are ordered numerically rather than as strings.
+     */
+    private KeyWrapper keyFor(Object value) {
+        return new KeyWrapper(convertValue(value, attributes.get(primaryKeyIndex).getDataType()));
+    }
+    
+    /**
+     * Returns the primary-key index key of a record: its key value, or a CompositeKey of its
+     * key values in key order.
+     */
+    private KeyWrapper keyOf(Record record) {
+        if (keyColumns.length == 1) {
+            return keyFor(record.getValue(primaryKeyIndex));
+        }
+        Object[] values = new Object[keyColumns.length];
+        for (int k = 0; k < values.length; k++) {
+            values[k] = convertValue(record.getValue(keyColumns[k]), attributes.get(keyColumns[k]).getDataType());
+        }
+        return new KeyWrapper(new CompositeKey(values, (byte) 0));
+    }
+    
+    /**
+     * The index scan() reads for a condition: the primary-key index (index == null) or a
+     * secondary index, with the key bounds and the columns whose terms they answer, or else the
+     * bitmap indexes.
+     */
+    private static class AccessPath {
+        static final AccessPath BITMAPS = new AccessPath(new int[0], null, null);
+        
+        final int[] columns;
+        final SecondaryIndex index;
+        final KeyRange range;
+        
+        AccessPath(int[] columns, SecondaryIndex index, KeyRange range) {
+            this.columns = columns;
+            this.index = index;
+            this.range = range;
+        }
+    }
+    
+    /**
+     * Index key bounds extracted from a condition; a null bound is open.
+     */
+    private static class KeyRange {
+        KeyWrapper low, high;
+        boolean lowInclusive = true, highInclusive = true;
+        
+        void tightenLow(KeyWrapper key, boolean inclusive) {
+            int cmp = low == null ? 1 : key.compareTo(low);
+            if (cmp > 0 || (cmp == 0 && !inclusive)) {
+                low = key;
+                lowInclusive = inclusive;
+            }
+        }
+        
+        void tightenHigh(KeyWrapper key, boolean inclusive) {
+            int cmp = high == null ? -1 : key.compareTo(high);
+            if (cmp < 0 || (cmp == 0 && !inclusive)) {
+                high = key;
+                highInclusive = inclusive;
+            }
+        }
+        
+        boolean isPoint() {
+            return low != null && high != null && lowInclusive && highInclusive && low.compareTo(high) == 0;
+        }
+    }
+    
+    /**
+     * An index on a non-key column, created with CREATE INDEX: an ordered tree, a HashIndex for
+     * columns only compared with "=", or a CompressedBitmap of row positions per distinct value.
+     * Several records can share a value, so each tree or hash key maps to the list of records
+     * holding it; these hold the stored records rather than row positions, which shift whenever
+     * deleted rows are compacted away (bitmaps are rebuilt then). NULLs are left out since no
+     * comparison matches them.
+     * Only the definition is saved: the structure is built from the rows on first use and kept
+     * up to date by insert, update and delete from then on.
+     */
+    public static class SecondaryIndex implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String name;
+        private final int column;
+        private final IndexType type;
+        private final Attribute.DataType keyType;
+        private transient OrderedIndex<KeyWrapper, List<Record>> entries; // BST or BTREE
+        private transient HashIndex<Record> hash; // HASH
+        private transient Map<Object, CompressedBitmap> bitmaps; // BITMAP: rows by value
+        
+        SecondaryIndex(String name, int column, IndexType type, Attribute.DataType keyType) {
+            this.name = name;
+            this.column = column;
+            this.type = type;
+            this.keyType = keyType;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        /**
+         * Returns the position of the indexed attribute in the schema.
+         */
+        public int getColumn() {
+            return column;
+        }
+        
+        public IndexType getType() {
+            return type;
+        }
+        
+        boolean isBuilt() {
+            return entries != null || hash != null || bitmaps != null;
+        }
+        
+        /**
+         * Indexes the given rows, by position; rows in deleted (which may be null) are skipped.
+         */
+        void build(List<Record> rows, BitSet deleted) {
+            if (type == IndexType.HASH) {
+                hash = new HashIndex<>(keyType == Attribute.DataType.INTEGER);
+            } else if (type == IndexType.BITMAP) {
+                bitmaps = new HashMap<>();
+            } else {
+                entries = type == IndexType.BTREE ? new BPlusTree<>() : new BinarySearchTree<>();
+                load(rows, deleted);
+                return;
+            }
+            for (int row = 0; row < rows.size(); row++) {
+                if (deleted == null || !deleted.get(row)) {
+                    add(rows.get(row), row);
+                }
+            }
+        }
+        
+        /**
+         * Builds the tree in bulk: the live records are sorted by value (stably, so each value
+         * keeps its records in row order), grouped, and loaded bottom-up.
+         */
+        private void load(List<Record> rows, BitSet deleted) {
+            List<Record> holders = new ArrayList<>(rows.size());
+            for (int row = 0; row < rows.size(); row++) {
+                Record record = rows.get(row);
+                if ((deleted == null || !deleted.get(row)) && record.getValue(column) != null) {
+                    holders.add(record);
+                }
+            }
+            holders.sort((a, b) -> compareKeys(a.getValue(column), b.getValue(column)));
+            List<KeyWrapper> keys = new ArrayList<>();
+            List<List<Record>> groups = new ArrayList<>();
+            for (Record record : holders) {
+                Object value = record.getValue(column);
+                if (keys.isEmpty() || compareKeys(keys.get(keys.size() - 1).key, value) != 0) {
+                    keys.add(new KeyWrapper(value));
+                    groups.add(new ArrayList<>(1));
+                }
+                groups.get(groups.size() - 1).add(record);
+            }
+            entries.load(keys, groups);
+        }
+        
+        @SuppressWarnings("unchecked")
+        private static int compareKeys(Object a, Object b) {
+            return ((Comparable<Object>) a).compareTo(b);
+        }
+        
+        /**
+         * Discards the index structure; it is rebuilt on next use.
+         */
+        void reset() {
+            entries = null;
+            hash = null;
+            bitmaps = null;
+        }
+        
+        void add(Record record, int row) {
+            Object value = record.getValue(column);
+            if (value == null) {
+                return;
+            }
+            if (bitmaps != null) {
+                CompressedBitmap rows = bitmaps.get(value);
+                if (rows == null) {
+                    rows = new CompressedBitmap();
+                    bitmaps.put(value, rows);
+                }
+                rows.add(row);
+                return;
+            }
+            if (hash != null) {
+                hash.add(value, record);
+                return;
+            }
+            KeyWrapper key = new KeyWrapper(value);
+            List<Record> holders = entries.search(key);
+            if (holders == null) {
+                holders = new ArrayList<>(1);
+                entries.insert(key, holders);
+            }
+            holders.add(record);
+        }
+        
+        void remove(Record record, int row) {
+            Object value = record.getValue(column);
+            if (value == null) {
+                return;
+            }
+            if (bitmaps != null) {
+                CompressedBitmap rows = bitmaps.get(value);
+                if (rows != null) {
+                    rows.remove(row);
+                    if (rows.isEmpty()) {
+                        bitmaps.remove(value);
+                    }
+                }
+                return;
+            }
+            if (hash != null) {
+                hash.remove(value, record);
+                return;
+            }
+            KeyWrapper key = new KeyWrapper(value);
+            List<Record> holders = entries.search(key);
+            if (holders == null) {
+                return;
+            }
+            for (int i = 0; i < holders.size(); i++) {
+                if (holders.get(i) == record) {
+                    holders.remove(i);
+                    break;
+                }
+            }
+            if (holders.isEmpty()) {
+                entries.delete(key);
+            }
+        }
+        
+        /**
+         * Returns the rows of a bitmap index whose value satisfies "value op constant", as the
+         * union of the bitmaps of those distinct values.
+         */
+        CompressedBitmap matching(String op, Object constant) {
+            CompressedBitmap result = new CompressedBitmap();
+            if (op.equals("=") || op.equals("==")) {
+                CompressedBitmap rows = bitmaps.get(constant);
+                return rows == null ? result : CompressedBitmap.or(result, rows);
+            }
+            for (Map.Entry<Object, CompressedBitmap> entry : bitmaps.entrySet()) {
+                if (compareValues(entry.getKey(), op, constant)) {
+                    result = CompressedBitmap.or(result, entry.getValue());
+                }
+            }
+            return result;
+        }
+        
+        /**
+         * Returns a cursor over the records whose value falls within the bounds, in value order.
+         * A hash index only takes a single value.
+         */
+        Iterator<Record> lookup(KeyRange range) {
+            Iterator<List<Record>> lists;
+            if (hash != null) {
+                lists = Collections.singletonList(hash.get(range.low.key)).iterator();
+            } else if (range.isPoint()) {
+                List<Record> holders = entries.search(range.low);
+                lists = holders == null ? Collections.<List<Record>>emptyIterator()
+                        : Collections.singletonList(holders).iterator();
+            } else {
+                lists = entries.range(range.low, range.lowInclusive, range.high, range.highInclusive);
+            }
+            return new Iterator<Record>() {
+                private Iterator<Record> current = Collections.emptyIterator();
+                
+                @Override
+                public boolean hasNext() {
+                    while (!current.hasNext() && lists.hasNext()) {
+                        current = lists.next().iterator();
+                    }
+                    return current.hasNext();
+                }
+                
+                @Override
+                public Record next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return current.next();
+                }
+            };
+        }
+    }
+    
+    /**
+     * Statistics of a table's rows for estimating how many of them a condition keeps: the row
+     * count and, per column, the number of distinct and NULL values and an equi-depth histogram,
+     * whose bucket boundaries are the values at evenly spaced ranks in sorted order (the first
+     * being the smallest value and the last the largest). Each bucket holds about the same
+     * number of rows, so a range covering k of them keeps about k / BUCKETS of the values
+     * however they are distributed.
+     */
+    public static class Statistics {
+        private static final int BUCKETS = 16;
+        
+        // Selectivity assumed for comparisons the statistics say nothing about, such as a
+        // range between two attributes.
+        public static final double DEFAULT_SELECTIVITY = 1.0 / 3;
+        
+        private final int rowCount;
+        private final int[] distinct;
+        private final int[] nulls;
+        private final Object[][] bounds; // Per column; empty if every value is NULL.
+        
+        Statistics(List<Record> rows, int width) {
+            rowCount = rows.size();
+            distinct = new int[width];
+            nulls = new int[width];
+            bounds = new Object[width][];
+            for (int column = 0; column < width; column++) {
+                Object[] values = new Object[rowCount];
+                int n = 0;
+                for (Record record : rows) {
+                    Object value = record.getValue(column);
+                    if (value != null) {
+                        values[n++] = value;
+                    }
+                }
+                Arrays.sort(values, 0, n, Table::compareValues);
+                int count = n == 0 ? 0 : 1;
+                for (int i = 1; i < n; i++) {
+                    if (compareValues(values[i - 1], values[i]) != 0) {
+                        count++;
+                    }
+                }
+                distinct[column] = count;
+                nulls[column] = rowCount - n;
+                bounds[column] = new Object[n == 0 ? 0 : BUCKETS + 1];
+                for (int b = 0; n > 0 && b <= BUCKETS; b++) {
+                    bounds[column][b] = values[(int) ((long) b * (n - 1) / BUCKETS)];
+                }
+            }
+        }
+        
+        public int getRowCount() {
+            return rowCount;
+        }
+        
+        /**
+         * Returns the number of distinct non-NULL values in the column, and at least 1.
+         */
+        public int distinctValues(int column) {
+            return Math.max(1, distinct[column]);
+        }
+        
+        public int nullValues(int column) {
+            return nulls[column];
+        }
+        
+        /**
+         * Returns the smallest value in the column, or null if every value is NULL.
+         */
+        public Object min(int column) {
+            return bounds[column].length == 0 ? null : bounds[column][0];
+        }
+        
+        /**
+         * Returns the largest value in the column, or null if every value is NULL.
+         */
+        public Object max(int column) {
+            return bounds[column].length == 0 ? null : bounds[column][BUCKETS];
+        }
+        
+        /**
+         * Estimates the share of rows satisfying a compiled condition on the table's own schema:
+         * an equality keeps one distinct value's share, a range the share of the histogram it
+         * covers, AND multiplies the shares of its terms (see conjunction) and OR adds them less
+         * their overlap.
+         */
+        public double selectivity(Condition condition) {
+            if (rowCount == 0) {
+                return 0;
+            }
+            if (condition instanceof CompoundCondition
+                    && ((CompoundCondition) condition).logicalOperator.equalsIgnoreCase("AND")) {
+                return conjunction(conjuncts(condition));
+            }
+            if (condition instanceof CompoundCondition) { // OR
+                CompoundCondition compound = (CompoundCondition) condition;
+                double left = selectivity(compound.left), right = selectivity(compound.right);
+                return left + right - left * right;
+            }
+            if (condition instanceof NotCondition) {
+                return 1 - selectivity(((NotCondition) condition).inner);
+            }
+            if (!(condition instanceof SimpleCondition)) {
+                return DEFAULT_SELECTIVITY;
+            }
+            SimpleCondition term = (SimpleCondition) condition;
+            int column = term.leftIndex;
+            boolean equality = term.operator.equals("=") || term.operator.equals("==");
+            if (term.rightIsAttr) {
+                double equal = 1.0 / Math.max(distinctValues(column), distinctValues(term.rightIndex));
+                return equality ? equal : term.operator.equals("!=") ? 1 - equal : DEFAULT_SELECTIVITY;
+            }
+            Object value = term.rightValue;
+            if (value == null || bounds[column].length == 0) {
+                return 0;
+            }
+            double equal = equal(column, value);
+            switch (term.operator) {
+                case "=":
+                case "==":
+                    return present(column) * equal;
+                case "!=":
+                    return present(column) * (1 - equal);
+                case "<":
+                case "<=":
+                case ">":
+                case ">=":
+                    return conjunction(Collections.<Condition>singletonList(term));
+                default:
+                    return DEFAULT_SELECTIVITY;
+            }
+        }
+        
+        /**
+         * Estimates the share of rows satisfying all of the given terms. The terms comparing a
+         * column with constants bound one range of it, whose share is read from the histogram
+         * once, between the share of values below its lower bound and the share up to its upper
+         * bound; multiplying the shares of the bounds instead would count the range twice. The
+         * shares of the other terms and of the ranges of different columns are multiplied.
+         */
+        private double conjunction(List<Condition> terms) {
+            double selectivity = 1;
+            // Per column bounded: the share of values below the range and the share up to its end.
+            Map<Integer, double[]> ranges = new LinkedHashMap<>();
+            for (Condition condition : terms) {
+                if (!(condition instanceof SimpleCondition) || !isRange((SimpleCondition) condition)) {
+                    selectivity *= selectivity(condition);
+                    continue;
+                }
+                SimpleCondition term = (SimpleCondition) condition;
+                int column = term.leftIndex;
+                double[] range = ranges.computeIfAbsent(column, c -> new double[] { 0, 1 });
+                Object value = term.rightValue;
+                switch (term.operator) {
+                    case "<":
+                        range[1] = Math.min(range[1], below(column, value));
+                        break;
+                    case "<=":
+                        range[1] = Math.min(range[1], below(column, value) + equal(column, value));
+                        break;
+                    case ">":
+                        range[0] = Math.max(range[0], below(column, value) + equal(column, value));
+                        break;
+                    default:
+                        range[0] = Math.max(range[0], below(column, value));
+                        break;
+                }
+            }
+            for (Map.Entry<Integer, double[]> range : ranges.entrySet()) {
+                double share = range.getValue()[1] - range.getValue()[0];
+                selectivity *= present(range.getKey()) * Math.max(0, Math.min(1, share));
+            }
+            return selectivity;
+        }
+        
+        /**
+         * Whether the term compares a column holding values with a constant by <, <=, > or >=.
+         */
+        private boolean isRange(SimpleCondition term) {
+            switch (term.operator) {
+                case "<":
+                case "<=":
+                case ">":
+                case ">=":
+                    return !term.rightIsAttr && term.rightValue != null && bounds[term.leftIndex].length > 0;
+                default:
+                    return false;
+            }
+        }
+        
+        /**
+         * Returns the share of rows whose value in the column is not NULL.
+         */
+        private double present(int column) {
+            return 1 - (double) nulls[column] / rowCount;
+        }
+        
+        /**
+         * Estimates the share of the column's non-NULL values equal to the given value: one
+         * distinct value's share, or none if the value lies outside the column's values.
+         */
+        private double equal(int column, Object value) {
+            boolean inRange = compareValues(value, min(column)) >= 0 && compareValues(value, max(column)) <= 0;
+            return inRange ? 1.0 / distinctValues(column) : 0;
+        }
+        
+        /**
+         * Estimates the share of the column's non-NULL values below the given value from the
+         * histogram, interpolating linearly within the bucket it falls in for numbers.
+         */
+        private double below(int column, Object value) {
+            Object[] b = bounds[column];
+            if (compareValues(value, b[0]) <= 0) {
+                return 0;
+            }
+            if (compareValues(value, b[BUCKETS]) > 0) {
+                return 1;
+            }
+            // The bucket [b[i], b[i + 1]] holding the value, with b[i] < value.
+            int i = 0;
+            while (i + 1 < BUCKETS && compareValues(b[i + 1], value) < 0) {
+                i++;
+            }
+            double within = 0.5;
+            if (value instanceof Number && b[i] instanceof Number) {
+                double low = ((Number) b[i]).doubleValue(), high = ((Number) b[i + 1]).doubleValue();
+                within = high > low ? Math.min(1, (((Number) value).doubleValue() - low) / (high - low)) : 1;
+            }
+            return (i + within) / BUCKETS;
+        }
+    }
+    
+    /**
+     * A helper inner class to wrap index key values.
      */
     private static class KeyWrapper implements Comparable<KeyWrapper>, Serializable {
         private static final long serialVersionUID = 1L;
@@ -518,6 +2689,48 @@ public class Table implements Serializable {
         }
     }
     
+    /**
+     * The value of a composite primary key: the key attributes' values in key order, compared
+     * one attribute at a time, each by its own type. A shorter key is a bound for range scans
+     * that sorts before (bias BEFORE) or after (bias AFTER) every key it is a prefix of.
+     */
+    private static class CompositeKey implements Comparable<CompositeKey>, Serializable {
+        private static final long serialVersionUID = 1L;
+        static final byte BEFORE = -1, AFTER = 1;
+        private final Object[] values;
+        private final byte bias;
+        
+        CompositeKey(Object[] values, byte bias) {
+            this.values = values;
+            this.bias = bias;
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public int compareTo(CompositeKey other) {
+            int shared = Math.min(values.length, other.values.length);
+            for (int i = 0; i < shared; i++) {
+                int cmp = ((Comparable<Object>) values[i]).compareTo(other.values[i]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            if (values.length == other.values.length) {
+                return Integer.compare(bias, other.bias);
+            }
+            return values.length < other.values.length ? (bias == AFTER ? 1 : -1) : (other.bias == AFTER ? -1 : 1);
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder("(");
+            for (int i = 0; i < values.length; i++) {
+                text.append(i == 0 ? "" : ", ").append(formatValue(values[i]));
+            }
+            return text.append(')').toString();
+        }
+    }
+    
     /**
      * Inner class representing an attribute (column) of the table.
      */
@@ -556,6 +2769,38 @@ public class Table implements Serializable {
 
     // ----------------- Static Helper Methods for Comparisons -----------------
 
+    /**
+     * Orders two non-null values the way the comparison operators do: integers as integers,
+     * other numbers as doubles and anything else as strings.
+     */
+    public static int compareValues(Object a, Object b) {
+        if (a instanceof Integer && b instanceof Integer) {
+            return Integer.compare((Integer) a, (Integer) b);
+        }
+        if (a instanceof Number && b instanceof Number) {
+            double x = ((Number) a).doubleValue(), y = ((Number) b).doubleValue();
+            return x < y ? -1 : x > y ? 1 : 0;
+        }
+        return a.toString().compareTo(b.toString());
+    }
+    
+    /**
+     * Compares two stored values with the given operator, numerically when both are numbers
+     * and as strings otherwise. A comparison involving NULL is never true.
+     */
+    private static boolean compareValues(Object a, String op, Object b) {
+        if (a == null || b == null) {
+            return false;
+        }
+        if (a instanceof Integer && b instanceof Integer) {
+            return compareInts((Integer) a, op, (Integer) b);
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return compareDoubles(((Number) a).doubleValue(), op, ((Number) b).doubleValue());
+        }
+        return compareStrings(a.toString(), op, b.toString());
+    }
+
     private static boolean compareInts(int a, String op, int b) {
         switch (op) {
             case "=":
@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only log of the commands that change DBMS state.
+ * Each entry is one line holding a log sequence number (LSN) and the command text. Commands are
+ * appended and forced to disk before they execute, so after a crash the state can be rebuilt by
+ * replaying the entries newer than the last checkpoint.
+ */
+public class WriteAheadLog {
+    private final Path path;
+    private final FileChannel channel;
+    private long lastLsn;
+
+    /**
+     * A logged command and its sequence number.
+     */
+    public static class Entry {
+        private final long lsn;
+        private final String command;
+
+        Entry(long lsn, String command) {
+            this.lsn = lsn;
+            this.command = command;
+        }
+
+        public long getLsn() {
+            return lsn;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+    }
+
+    /**
+     * Opens (or creates) the log file. A partially written last entry left by a crash is cut off.
+     */
+    public WriteAheadLog(String fileName) throws IOException {
+        this.path = Paths.get(fileName);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        List<Entry> entries = new ArrayList<>();
+        long validLength = scan(entries);
+        if (validLength < channel.size()) {
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+        lastLsn = entries.isEmpty() ? 0 : entries.get(entries.size() - 1).getLsn();
+    }
+
+    /**
+     * Returns every complete entry in the log, oldest first.
+     */
+    public List<Entry> readEntries() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        scan(entries);
+        return entries;
+    }
+
+    /**
+     * Parses the log into entries and returns the length of the well-formed prefix.
+     */
+    private long scan(List<Entry> entries) throws IOException {
+        byte[] data = Files.readAllBytes(path);
+        int lineStart = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != '\n') {
+                continue;
+            }
+            String line = new String(data, lineStart, i - lineStart, StandardCharsets.UTF_8);
+            int tab = line.indexOf('\t');
+            if (tab <= 0) {
+                break;
+            }
+            try {
+                entries.add(new Entry(Long.parseLong(line.substring(0, tab)), line.substring(tab + 1)));
+            } catch (NumberFormatException e) {
+                break;
+            }
+            lineStart = i + 1;
+        }
+        return lineStart;
+    }
+
+    /**
+     * Appends a command, forces it to disk and returns its sequence number.
+     */
+    public long append(String commandText) throws IOException {
+        long lsn = lastLsn + 1;
+        String line = lsn + "\t" + commandText.replace('\n', ' ').replace('\r', ' ') + "\n";
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        lastLsn = lsn;
+        return lsn;
+    }
+
+    public long getLastLsn() {
+        return lastLsn;
+    }
+
+    /**
+     * Makes sure new entries are numbered after the given sequence number, e.g. the one recorded
+     * by the last checkpoint when the log itself has been emptied.
+     */
+    public void advanceTo(long lsn) {
+        if (lsn > lastLsn) {
+            lastLsn = lsn;
+        }
+    }
+
+    /**
+     * Discards every entry; called once a checkpoint has made them redundant.
+     */
+    public void truncate() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}